@@ -0,0 +1,190 @@
+/**
+ * This file is part of Argentum Online.
+ *
+ * Copyright (c) 2014 Argentum Online <https://github.com/orgs/Argentum-Online/members>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghrum.common.protocol;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Define a bounded lock-free ring buffer for many producers and a single consumer
+ * <p>
+ * Every slot of the ring carries a sequence number that tells whether it's free to be written or ready to be read,
+ * so producers only contend on the tail index and the consumer claims a whole batch of ready slots at once. Removing
+ * from the head is also safe from producers, which allows them to evict the oldest element when the ring is full
+ *
+ * @param <E> the type of the elements of the queue
+ */
+public final class BoundedMessageQueue<E> {
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<E> elements;
+    private final AtomicLongArray sequences;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private final Object[] batch;
+
+    /**
+     * Default constructor for {@link BoundedMessageQueue}
+     *
+     * @param capacity the max number of elements of the queue, rounded up to a power of two
+     */
+    public BoundedMessageQueue(int capacity) {
+        if (capacity <= 0 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("Capacity " + capacity + " is out of bounds");
+        }
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        this.capacity = size;
+        this.mask = this.capacity - 1;
+        this.elements = new AtomicReferenceArray<>(this.capacity);
+        this.sequences = new AtomicLongArray(this.capacity);
+        this.batch = new Object[this.capacity];
+        for (int i = 0; i < this.capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Gets the max number of elements of the queue
+     *
+     * @return the max number of elements of the queue
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Gets the number of elements of the queue
+     *
+     * @return an estimation of the number of elements of the queue
+     */
+    public int size() {
+        final long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, capacity));
+    }
+
+    /**
+     * Gets if the queue is empty
+     *
+     * @return true if the queue has no elements
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Adds an element to the tail of the queue, this method is safe to call from any thread
+     *
+     * @param element the element to add
+     * @return false if the queue is full, true otherwise
+     */
+    public boolean offer(E element) {
+        if (element == null) {
+            throw new IllegalArgumentException("Trying to offer a null element");
+        }
+        for (; ; ) {
+            final long position = tail.get();
+            final int index = (int) position & mask;
+            final long difference = sequences.get(index) - position;
+
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements.lazySet(index, element);
+                    sequences.lazySet(index, position + 1);
+                    return true;
+                }
+            } else if (difference < 0) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Removes the element at the head of the queue, this method is safe to call from any thread
+     *
+     * @return the element removed or null if the queue is empty
+     */
+    public E poll() {
+        for (; ; ) {
+            final long position = head.get();
+            final int index = (int) position & mask;
+            final long difference = sequences.get(index) - (position + 1);
+
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    return release(index, position);
+                }
+            } else if (difference < 0) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Removes every element of the queue and passes them to the consumer, in order
+     * <p>
+     * The whole batch of ready elements is claimed with a single update of the head, and its slots are made writable
+     * again before the consumer runs, so producers never see the batch as occupied capacity. This method must only be
+     * called from the consumer thread
+     *
+     * @param consumer the consumer of the elements
+     * @return the number of elements removed
+     */
+    @SuppressWarnings("unchecked")
+    public int drain(Consumer<? super E> consumer) {
+        long position;
+        int count;
+        do {
+            position = head.get();
+            count = 0;
+            while (count < capacity && sequences.get((int) (position + count) & mask) == position + count + 1) {
+                count++;
+            }
+            if (count == 0) {
+                return 0;
+            }
+        } while (!head.compareAndSet(position, position + count));
+
+        for (int i = 0; i < count; i++) {
+            batch[i] = release((int) (position + i) & mask, position + i);
+        }
+        try {
+            for (int i = 0; i < count; i++) {
+                consumer.accept((E) batch[i]);
+            }
+        } finally {
+            Arrays.fill(batch, 0, count, null);
+        }
+        return count;
+    }
+
+    /**
+     * Takes the element of a claimed slot and makes the slot writable again
+     */
+    private E release(int index, long position) {
+        final E element = elements.get(index);
+        elements.lazySet(index, null);
+        sequences.lazySet(index, position + capacity);
+        return element;
+    }
+}
@@ -0,0 +1,239 @@
+/**
+ * This file is part of Argentum Online.
+ *
+ * Copyright (c) 2014 Argentum Online <https://github.com/orgs/Argentum-Online/members>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghrum.common.protocol;
+
+import io.netty.buffer.ByteBuf;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Define the primitives shared by every {@link MessageCodec} that aren't provided by {@link ByteBuf}
+ */
+public final class CodecSupport {
+    /**
+     * The max length of a string, in bytes
+     */
+    public static final int MAX_STRING_LENGTH = 0x7FFF;
+
+    /**
+     * Prevent the class from being instantiated
+     */
+    private CodecSupport() {
+    }
+
+    /**
+     * Writes an unsigned variable-length integer, 7 bits per byte
+     *
+     * @param buffer the buffer to write to
+     * @param value  the value to write
+     */
+    public static void writeVarInt(ByteBuf buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer.writeByte(value);
+    }
+
+    /**
+     * Reads an unsigned variable-length integer, 7 bits per byte
+     *
+     * @param buffer the buffer to read from
+     * @return the value read
+     * @throws IOException if the integer is longer than 5 bytes
+     */
+    public static int readVarInt(ByteBuf buffer) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            final byte current = buffer.readByte();
+            value |= (current & 0x7F) << shift;
+            if ((current & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Variable-length integer is too long");
+    }
+
+    /**
+     * Writes an unsigned variable-length long, 7 bits per byte
+     *
+     * @param buffer the buffer to write to
+     * @param value  the value to write
+     */
+    public static void writeVarLong(ByteBuf buffer, long value) {
+        while ((value & ~0x7FL) != 0L) {
+            buffer.writeByte(((int) value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer.writeByte((int) value);
+    }
+
+    /**
+     * Reads an unsigned variable-length long, 7 bits per byte
+     *
+     * @param buffer the buffer to read from
+     * @return the value read
+     * @throws IOException if the long is longer than 10 bytes
+     */
+    public static long readVarLong(ByteBuf buffer) throws IOException {
+        long value = 0L;
+        for (int shift = 0; shift < 70; shift += 7) {
+            final byte current = buffer.readByte();
+            value |= (long) (current & 0x7F) << shift;
+            if ((current & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Variable-length long is too long");
+    }
+
+    /**
+     * Writes a signed variable-length integer, zigzag encoded so small negative values stay short
+     *
+     * @param buffer the buffer to write to
+     * @param value  the value to write
+     */
+    public static void writeSignedVarInt(ByteBuf buffer, int value) {
+        writeVarInt(buffer, (value << 1) ^ (value >> 31));
+    }
+
+    /**
+     * Reads a signed variable-length integer, zigzag encoded so small negative values stay short
+     *
+     * @param buffer the buffer to read from
+     * @return the value read
+     * @throws IOException if the integer is longer than 5 bytes
+     */
+    public static int readSignedVarInt(ByteBuf buffer) throws IOException {
+        final int value = readVarInt(buffer);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Gets the number of bytes of an unsigned variable-length integer
+     *
+     * @param value the value of the integer
+     * @return the number of bytes, between 1 and 5
+     */
+    public static int getVarIntLength(int value) {
+        return value == 0 ? 1 : (31 - Integer.numberOfLeadingZeros(value)) / 7 + 1;
+    }
+
+    /**
+     * Gets the number of bytes of an unsigned variable-length integer at the given index, without reading it
+     *
+     * @param buffer the buffer that contains the integer
+     * @param index  the index of the integer
+     * @param end    the index after the last readable byte of the buffer
+     * @return the number of bytes, 0 if the integer isn't readable yet or -1 if it's longer than 5 bytes
+     */
+    public static int getVarIntLength(ByteBuf buffer, int index, int end) {
+        for (int i = 0; i < 5; i++) {
+            if (index + i >= end) {
+                return 0;
+            }
+            if ((buffer.getByte(index + i) & 0x80) == 0) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets an unsigned variable-length integer at the given index, without reading it
+     * <p>
+     * The integer must be complete, as told by {@link #getVarIntLength(ByteBuf, int, int)}
+     *
+     * @param buffer the buffer that contains the integer
+     * @param index  the index of the integer
+     * @return the value of the integer
+     */
+    public static int getVarInt(ByteBuf buffer, int index) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            final byte current = buffer.getByte(index++);
+            value |= (current & 0x7F) << shift;
+            if ((current & 0x80) == 0) {
+                break;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Sets an unsigned variable-length integer at the given index, padded with continuation bytes to a fixed width
+     *
+     * @param buffer the buffer to write to
+     * @param index  the index of the integer
+     * @param value  the value to write
+     * @param width  the number of bytes of the integer, at least {@link #getVarIntLength(int)} of the value
+     */
+    public static void setVarInt(ByteBuf buffer, int index, int value, int width) {
+        for (int end = index + width - 1; index < end; index++) {
+            buffer.setByte(index, (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer.setByte(index, value);
+    }
+
+    /**
+     * Writes a string as UTF-8 prefixed with its length
+     *
+     * @param buffer the buffer to write to
+     * @param value  the value to write
+     * @throws IOException if the string is too long
+     */
+    public static void writeString(ByteBuf buffer, String value) throws IOException {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_STRING_LENGTH) {
+            throw new IOException("String is too long: " + bytes.length);
+        }
+        writeVarInt(buffer, bytes.length);
+        buffer.writeBytes(bytes);
+    }
+
+    /**
+     * Reads a string as UTF-8 prefixed with its length
+     *
+     * @param buffer the buffer to read from
+     * @return the value read
+     * @throws IOException if the length of the string is not valid
+     */
+    public static String readString(ByteBuf buffer) throws IOException {
+        final int length = readLength(buffer);
+        final String value = buffer.toString(buffer.readerIndex(), length, StandardCharsets.UTF_8);
+        buffer.skipBytes(length);
+        return value;
+    }
+
+    /**
+     * Reads the length of a string or an array, and checks it against the bytes left in the buffer
+     *
+     * @param buffer the buffer to read from
+     * @return the length read
+     * @throws IOException if the length is larger than the bytes left in the buffer
+     */
+    public static int readLength(ByteBuf buffer) throws IOException {
+        final int length = readVarInt(buffer);
+        if (length < 0 || length > buffer.readableBytes()) {
+            throw new IOException("Length " + length + " is out of bounds");
+        }
+        return length;
+    }
+}
@@ -17,21 +17,48 @@
  */
 package com.ghrum.common.protocol;
 
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
+import io.netty.util.AttributeKey;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.Timeout;
 
 import java.net.InetSocketAddress;
-import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.Queue;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 /**
  * Define the common implementation for {@link Connection}
  */
 public abstract class CommonConnection implements Connection {
+    /**
+     * The key of the attribute of the channel that references its connection
+     */
+    public static final AttributeKey<Connection> CONNECTION_KEY = AttributeKey.valueOf("Connection");
+    /**
+     * The key of the attribute of the channel that holds the {@link FrameFormat} of the frames written to it
+     */
+    public static final AttributeKey<FrameFormat> FRAME_FORMAT_KEY = AttributeKey.valueOf("FrameFormat");
+    /**
+     * The size of a frame from which it's written on its own rather than copied into the aggregated buffer
+     */
+    public static final int AGGREGATE_THRESHOLD = 1024;
+    /**
+     * The default max number of incoming and unprocessed messages
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 4096;
+
     /**
      * The unique identifier of the session
      */
@@ -47,15 +74,55 @@ public abstract class CommonConnection implements Connection {
     /**
      * A queue of incoming and unprocessed messages
      */
-    protected final Queue<Message> messageQueue = new ArrayDeque<Message>();
+    protected final BoundedMessageQueue<Message> messageQueue;
+    /**
+     * The policy when the queue of incoming messages is full
+     */
+    protected final OverflowPolicy overflowPolicy;
+    /**
+     * The consumer that handles every drained message
+     */
+    private final Consumer<Message> messageHandler = this::dispatch;
+    /**
+     * The messages received while a blocking handler was running, only added to by the pulse
+     */
+    private final Queue<Message> deferredQueue = new ConcurrentLinkedQueue<Message>();
+    /**
+     * The tasks that run on the next pulse
+     */
+    protected final Queue<Runnable> taskQueue = new ConcurrentLinkedQueue<Runnable>();
+    /**
+     * Stores if a blocking handler of the connection is running
+     * <p>
+     * The flag is what serializes the handlers of a connection: blocking handlers run on the shared executor of the
+     * service, and while one of them is running every later message waits in the deferred queue, so there's never
+     * more than one handler of the connection running and they run in the order the messages were received
+     */
+    protected volatile boolean isBlocked = false;
     /**
      * A queue of outgoing messages that will be sent after the client finishes identification
      */
     protected final Queue<Message> sendQueue = new ConcurrentLinkedQueue<Message>();
+    /**
+     * A queue of outgoing bulk messages that are sent after every other queued message
+     */
+    protected final Queue<Message> bulkQueue = new ConcurrentLinkedQueue<Message>();
+    /**
+     * The queued supersedable messages by their class and key
+     */
+    protected final ConcurrentMap<SupersedeKey, PendingMessage> pendingMessages = new ConcurrentHashMap<>();
     /**
      * The current state.
      */
-    protected State state = State.EXCHANGE_HANDSHAKE;
+    protected volatile State state = State.EXCHANGE_HANDSHAKE;
+    /**
+     * The format of the frames aggregated by the pulse
+     */
+    protected volatile FrameFormat frameFormat = FrameFormat.FIXED;
+    /**
+     * Stores if the queues of the session were released, after which every message is released on arrival
+     */
+    protected volatile boolean isDisposed = false;
     /**
      * Stores if this Session has had disconnect called
      */
@@ -68,6 +135,38 @@ public abstract class CommonConnection implements Connection {
      * The Uncaught exception handler of this connection
      */
     protected AtomicReference<UncaughtExceptionHandler> uncaughtExceptionHandler;
+    /**
+     * The rooms this session is a member of
+     */
+    protected final Set<Room> rooms = ConcurrentHashMap.newKeySet();
+    /**
+     * The highest number of incoming messages handled in a single pulse
+     */
+    protected volatile int messageQueueHighWaterMark;
+    /**
+     * The highest number of outgoing messages sent in a single pulse
+     */
+    protected volatile int sendQueueHighWaterMark;
+    /**
+     * Stores if a flush of the channel is already scheduled on its event loop
+     */
+    protected final AtomicBoolean isFlushScheduled = new AtomicBoolean();
+    /**
+     * The time the last message was received, in nanoseconds
+     */
+    protected volatile long lastReadTime;
+    /**
+     * The time the last message was written, in nanoseconds
+     */
+    protected volatile long lastWriteTime;
+    /**
+     * The time the current state was entered, in nanoseconds
+     */
+    protected volatile long stateTime;
+    /**
+     * The timeout of the connection on the {@link ConnectionReaper}, guarded by the connection
+     */
+    Timeout timeout;
 
     /**
      * Default constructor for {@link CommonConnection}
@@ -76,10 +175,29 @@ public abstract class CommonConnection implements Connection {
      * @param channel  the channel attached to this session
      */
     public CommonConnection(Protocol protocol, Channel channel) {
+        this(protocol, channel, DEFAULT_QUEUE_CAPACITY, OverflowPolicy.DISCONNECT);
+    }
+
+    /**
+     * Constructor for {@link CommonConnection} with a bounded queue of incoming messages
+     *
+     * @param protocol       the protocol of the session
+     * @param channel        the channel attached to this session
+     * @param capacity       the max number of incoming and unprocessed messages
+     * @param overflowPolicy the policy when the queue of incoming messages is full
+     */
+    public CommonConnection(Protocol protocol, Channel channel, int capacity, OverflowPolicy overflowPolicy) {
+        if (overflowPolicy == null) {
+            throw new IllegalArgumentException("Trying to set a null overflow policy");
+        }
+        this.messageQueue = new BoundedMessageQueue<Message>(capacity);
+        this.overflowPolicy = overflowPolicy;
         this.id = Long.toString(new Random().nextLong(), 16).trim();
         this.channel = channel;
         this.protocol = protocol;
         this.uncaughtExceptionHandler = new AtomicReference<UncaughtExceptionHandler>(new DefaultUncaughtExceptionHandler(this));
+        this.channel.attr(CONNECTION_KEY).set(this);
+        this.lastReadTime = this.lastWriteTime = this.stateTime = System.nanoTime();
     }
 
     /**
@@ -111,9 +229,34 @@ public abstract class CommonConnection implements Connection {
      */
     @Override
     public void setState(State state) {
+        this.stateTime = System.nanoTime();
         this.state = state;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public FrameFormat getFrameFormat() {
+        return frameFormat;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The format is switched by the pulse, in order with the queued messages
+     */
+    @Override
+    public void setFrameFormat(FrameFormat format) {
+        if (format == null) {
+            throw new IllegalArgumentException("Trying to set a null frame format");
+        }
+        if (!protocol.getMessageService().isFrameFormatEnabled(format)) {
+            throw new IllegalArgumentException("Trying to set the frame format " + format + " that isn't enabled");
+        }
+        sendQueue.add(new FrameFormatSwitch(format));
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -146,20 +289,102 @@ public abstract class CommonConnection implements Connection {
      */
     @Override
     public void send(boolean isUrgent, Message message) {
+        send(isUrgent ? Priority.CRITICAL : Priority.NORMAL, message);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void send(Priority priority, Message message) {
         if (message == null) {
             throw new IllegalArgumentException("Trying to send a null message");
         }
+        if (isDisposed) {
+            ReferenceCountUtil.release(message);
+            return;
+        }
         try {
-            if (isUrgent && channel.isActive()) {
-                channel.writeAndFlush(message);
+            if (priority == Priority.CRITICAL && channel.isActive()) {
+                if (message instanceof SupersedableMessage) {
+                    discard(new SupersedeKey((SupersedableMessage) message));
+                }
+                writeAndScheduleFlush(message);
             } else {
-                sendQueue.add(message);
+                final Queue<Message> queue = (priority == Priority.BULK ? bulkQueue : sendQueue);
+                if (message instanceof SupersedableMessage) {
+                    supersede(queue, (SupersedableMessage) message);
+                } else {
+                    queue.add(message);
+                }
             }
         } catch (Exception ex) {
             uncaughtExceptionHandler.get().uncaughtException(message, ex);
         }
     }
 
+    /**
+     * Queues a supersedable message, replacing the older message with the same class and key if it's still queued
+     * <p>
+     * The newer message takes the place of the older one, unless the older one waits in the bulk queue and the newer
+     * one doesn't, in which case the older place is emptied and the newer message is queued in its own queue
+     *
+     * @param queue   the queue of the message if there is no older message
+     * @param message the message to queue
+     */
+    private void supersede(Queue<Message> queue, SupersedableMessage message) {
+        final SupersedeKey key = new SupersedeKey(message);
+        while (true) {
+            final PendingMessage pending = pendingMessages.get(key);
+            if (pending == null) {
+                final PendingMessage created = new PendingMessage(key, queue, message);
+                if (pendingMessages.putIfAbsent(key, created) == null) {
+                    queue.add(created);
+                    return;
+                }
+                continue;
+            }
+            final Message previous = pending.get();
+            if (previous == null) {
+                // The older message was taken while this one was being queued
+                pendingMessages.remove(key, pending);
+            } else if (pending.queue == bulkQueue && queue != bulkQueue) {
+                // The newer message must not wait behind a congested channel,
+                // so it's queued again in its own queue
+                if (pending.compareAndSet(previous, null)) {
+                    pendingMessages.remove(key, pending);
+                    ReferenceCountUtil.release(previous);
+                }
+            } else if (pending.compareAndSet(previous, message)) {
+                ReferenceCountUtil.release(previous);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Discards the queued supersedable message with the given class and key
+     *
+     * @param key the class and key of the message
+     */
+    private void discard(SupersedeKey key) {
+        final PendingMessage pending = pendingMessages.remove(key);
+        if (pending != null) {
+            ReferenceCountUtil.release(pending.getAndSet(null));
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute(Runnable task) {
+        if (task == null) {
+            throw new IllegalArgumentException("Trying to execute a null task");
+        }
+        taskQueue.add(task);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -213,44 +438,454 @@ public abstract class CommonConnection implements Connection {
      */
     @Override
     public <T extends Message> void messageReceived(T message) {
-        messageQueue.add(message);
+        if (isDisposed) {
+            ReferenceCountUtil.release(message);
+            return;
+        }
+        lastReadTime = System.nanoTime();
+        while (!messageQueue.offer(message)) {
+            switch (overflowPolicy) {
+                case DROP_OLDEST:
+                    final Message oldest = messageQueue.poll();
+                    if (oldest == null) {
+                        // The head is still being published by another producer or
+                        // was taken meanwhile, so drop the newest message instead
+                        ReferenceCountUtil.release(message);
+                        return;
+                    }
+                    ReferenceCountUtil.release(oldest);
+                    break;
+                case DROP_NEWEST:
+                    ReferenceCountUtil.release(message);
+                    return;
+                case DISCONNECT:
+                    ReferenceCountUtil.release(message);
+                    disconnect("Too many unprocessed messages");
+                    return;
+            }
+        }
+    }
+
+    /**
+     * Releases every queued message of the session, once it was removed from its pool
+     * <p>
+     * Queued messages may hold pooled buffers (such as the frames of {@link EncodedMessage} or the body buffer owned
+     * by a {@link MessageView}), which would otherwise never be given back
+     */
+    protected void dispose() {
+        isDisposed = true;
+        Message message;
+        while ((message = poll(true)) != null) {
+            ReferenceCountUtil.release(message);
+        }
+        while ((message = messageQueue.poll()) != null) {
+            ReferenceCountUtil.release(message);
+        }
+        while ((message = deferredQueue.poll()) != null) {
+            ReferenceCountUtil.release(message);
+        }
+    }
+
+    /**
+     * Gets the highest number of incoming messages handled in a single pulse
+     *
+     * @return the high-water mark of the incoming queue
+     */
+    public int getMessageQueueHighWaterMark() {
+        return messageQueueHighWaterMark;
+    }
+
+    /**
+     * Gets the highest number of outgoing messages sent in a single pulse
+     *
+     * @return the high-water mark of the outgoing queue
+     */
+    public int getSendQueueHighWaterMark() {
+        return sendQueueHighWaterMark;
     }
 
     /**
      * Pulse the session
      */
     public void pulse() {
-        Message message = null;
+        // Pulse every delivered message and aggregate them
+        // on a single buffer. After every message was serialized to the
+        // buffer, write and flush it at once
+        if (!sendQueue.isEmpty() || !bulkQueue.isEmpty()) {
+            aggregate();
+        }
+
+        // Pulse every task and every received message and handle it to its
+        // handler. Messages wait while a blocking handler is running, so
+        // they're still handled in order
+        Runnable task;
+        while ((task = taskQueue.poll()) != null) {
+            try {
+                task.run();
+            } catch (Exception ex) {
+                uncaughtExceptionHandler.get().uncaughtException(null, ex);
+            }
+        }
+        while (!isBlocked && !deferredQueue.isEmpty()) {
+            handleMessage(deferredQueue.poll());
+        }
+        if (isBlocked) {
+            return;
+        }
+        final int depth = messageQueue.drain(messageHandler);
+        if (depth > messageQueueHighWaterMark) {
+            messageQueueHighWaterMark = depth;
+        }
+        if (depth > 0) {
+            protocol.getMessageService().getMetrics().recordMessageQueue(depth);
+        }
+    }
+
+    /**
+     * Encodes every queued message into a single buffer and writes it to the channel
+     * <p>
+     * Frames that were already encoded are copied into the buffer, unless they are larger than
+     * {@link #AGGREGATE_THRESHOLD} in which case they are written on their own to avoid the copy. Bulk messages
+     * follow every normal message, and they stay queued while the channel is congested
+     */
+    protected void aggregate() {
+        final MessageLookupService service = protocol.getMessageService();
+        final ProtocolMetrics metrics = service.getMetrics();
+        final boolean isBulkAllowed = channel.isWritable();
+        FrameFormat format = frameFormat;
+        ByteBuf buffer = channel.alloc().ioBuffer();
+        boolean isWritten = false;
+        int depth = 0;
+        Message message;
 
-        // Pulse every delivered message and cache them
-        // on the buffer. After every message was serialized to the
-        // buffer, flush it
-        sendQueue.forEach(channel::write);
-        sendQueue.clear();
-        channel.flush();
+        while ((message = poll(isBulkAllowed)) != null) {
+            if (message instanceof FrameFormatSwitch) {
+                final FrameFormat next = ((FrameFormatSwitch) message).format;
+                if (next != format) {
+                    format.writeControl(buffer, next);
+                    switchFrameFormat(buffer, next);
+                    buffer = channel.alloc().ioBuffer();
+                    isWritten = true;
+                    frameFormat = format = next;
+                }
+                continue;
+            }
+            depth++;
+            if (message instanceof EncodedMessage && ((EncodedMessage) message).getFrameFormat() == format) {
+                final ByteBuf frame = ((EncodedMessage) message).content();
+                metrics.recordOutbound(format, frame, frame.readerIndex(), frame.readableBytes());
+                if (frame.readableBytes() > AGGREGATE_THRESHOLD) {
+                    buffer = writeAggregate(buffer);
+                    channel.write(frame);
+                    isWritten = true;
+                } else {
+                    buffer.writeBytes(frame, frame.readerIndex(), frame.readableBytes());
+                    frame.release();
+                }
+                continue;
+            }
+            final int mark = buffer.writerIndex();
+            try {
+                service.encode(message, buffer, format);
+                metrics.recordOutbound(format, buffer, mark, buffer.writerIndex() - mark);
+            } catch (Exception ex) {
+                buffer.writerIndex(mark);
+                uncaughtExceptionHandler.get().uncaughtException(message, ex);
+            } finally {
+                ReferenceCountUtil.release(message);
+            }
+        }
+        if (buffer.isReadable() || isWritten) {
+            lastWriteTime = System.nanoTime();
+        }
+        if (buffer.isReadable()) {
+            channel.writeAndFlush(buffer);
+        } else {
+            buffer.release();
+            if (isWritten) {
+                channel.flush();
+            }
+        }
+        if (depth > sendQueueHighWaterMark) {
+            sendQueueHighWaterMark = depth;
+        }
+        metrics.recordSendQueue(depth);
+    }
 
-        // Pulse every received message and handle to its
-        // handler
-        messageQueue.forEach(this::handleMessage);
-        messageQueue.clear();
+    /**
+     * Takes the next queued message
+     *
+     * @param isBulkAllowed true if bulk messages can be taken
+     * @return the next queued message or null if there isn't any
+     */
+    private Message poll(boolean isBulkAllowed) {
+        while (true) {
+            Message message = sendQueue.poll();
+            if (message == null && isBulkAllowed) {
+                message = bulkQueue.poll();
+            }
+            if (!(message instanceof PendingMessage)) {
+                return message;
+            }
+            final PendingMessage pending = (PendingMessage) message;
+            pendingMessages.remove(pending.key, pending);
+            message = pending.getAndSet(null);
+            if (message != null) {
+                return message;
+            }
+        }
+    }
+
+    /**
+     * Writes the aggregated buffer to the channel if it's not empty
+     *
+     * @param buffer the aggregated buffer
+     * @return the buffer where the next messages are aggregated
+     */
+    private ByteBuf writeAggregate(ByteBuf buffer) {
+        if (!buffer.isReadable()) {
+            return buffer;
+        }
+        channel.write(buffer);
+        return channel.alloc().ioBuffer();
+    }
+
+    /**
+     * Writes the aggregated buffer that ends with a control frame, and switches the format of the channel right after
+     * <p>
+     * Both happen in the same task of the event loop, so any message written to the channel from another thread is
+     * encoded either before the control frame with the previous format, or after it with the new one
+     *
+     * @param buffer the aggregated buffer
+     * @param format the new format of the channel
+     */
+    private void switchFrameFormat(ByteBuf buffer, FrameFormat format) {
+        if (channel.eventLoop().inEventLoop()) {
+            channel.write(buffer);
+            channel.attr(FRAME_FORMAT_KEY).set(format);
+        } else {
+            channel.eventLoop().execute(() -> {
+                channel.write(buffer);
+                channel.attr(FRAME_FORMAT_KEY).set(format);
+            });
+        }
+    }
+
+    /**
+     * Schedules a flush of the channel on its event loop, unless one is already scheduled
+     * <p>
+     * Must be called from the event loop of the channel, so the flush always runs after every write made before it
+     */
+    protected void scheduleFlush() {
+        if (isFlushScheduled.compareAndSet(false, true)) {
+            channel.eventLoop().execute(() -> {
+                isFlushScheduled.set(false);
+                channel.flush();
+            });
+        }
+    }
+
+    /**
+     * Writes a message to the channel and schedules a flush of it
+     * <p>
+     * The write and the flush are scheduled in the same task of the event loop, so a message is never written after
+     * the flush it relied on already ran. Many urgent messages written before the flush runs are flushed together.
+     * Messages that were already encoded are written as they are by the encoder, without copying their frame, when
+     * their format is the format of the channel
+     *
+     * @param message the message to write
+     */
+    protected void writeAndScheduleFlush(Message message) {
+        lastWriteTime = System.nanoTime();
+        final EventLoop loop = channel.eventLoop();
+        if (loop.inEventLoop()) {
+            channel.write(message);
+            scheduleFlush();
+        } else {
+            try {
+                loop.execute(() -> {
+                    channel.write(message);
+                    scheduleFlush();
+                });
+            } catch (RejectedExecutionException ex) {
+                ReferenceCountUtil.release(message);
+                throw ex;
+            }
+        }
     }
 
     /**
      * Handle a message
+     * <p>
+     * The message is released once handled, which gives {@link PooledMessage} instances back to their pool
      *
      * @param message the message to handle
      * @param <T>     the type of the message
      */
     @SuppressWarnings("unchecked")
     public <T extends Message> void handleMessage(T message) {
-        BiConsumer<Connection, T> handler = (BiConsumer<Connection, T>) protocol.getMessageService().getHandler(
-                message.getClass());
-        if (handler != null) {
+        final MessageLookupService service = protocol.getMessageService();
+        final MessageCodec<?> codec = service.getCodec(message.getClass());
+        if (codec == null) {
+            ReferenceCountUtil.release(message);
+            return;
+        }
+        final int opcode = codec.getOpcode();
+        final BiConsumer<Connection, T> handler = (BiConsumer<Connection, T>) service.getHandler(opcode);
+        if (handler != null && service.isBlocking(opcode)) {
+            isBlocked = true;
             try {
-                handler.accept(this, message);
-            } catch (Exception ex) {
+                service.getBlockingExecutor().execute(() -> {
+                    try {
+                        invoke(service, opcode, handler, message);
+                    } finally {
+                        isBlocked = false;
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                isBlocked = false;
+                ReferenceCountUtil.release(message);
                 uncaughtExceptionHandler.get().uncaughtException(message, ex);
             }
+            return;
+        }
+        invoke(service, opcode, handler, message);
+    }
+
+    /**
+     * Handle a message, or defer it while a blocking handler is running or older messages are still deferred
+     *
+     * @param message the message to handle
+     */
+    private void dispatch(Message message) {
+        if (isBlocked || !deferredQueue.isEmpty()) {
+            deferredQueue.add(message);
+        } else {
+            handleMessage(message);
+        }
+    }
+
+    /**
+     * Invokes the handler of a message, and releases the message afterwards
+     *
+     * @param service the service of the protocol
+     * @param opcode  the opcode of the message
+     * @param handler the handler of the message, or null if the message has no handler
+     * @param message the message to handle
+     * @param <T>     the type of the message
+     */
+    private <T extends Message> void invoke(MessageLookupService service, int opcode,
+                                            BiConsumer<Connection, T> handler, T message) {
+        try {
+            if (handler != null) {
+                handler.accept(this, message);
+                service.getMetrics().recordHandler(opcode, false);
+            }
+        } catch (Exception ex) {
+            service.getMetrics().recordHandler(opcode, true);
+            uncaughtExceptionHandler.get().uncaughtException(message, ex);
+        } finally {
+            // Pooled messages go back to their pool once handled, unless
+            // the handler retained them
+            ReferenceCountUtil.release(message);
+        }
+    }
+
+    /**
+     * Define all possible policies when the queue of incoming messages of {@link CommonConnection} is full
+     */
+    public enum OverflowPolicy {
+        /**
+         * The oldest unprocessed message is discarded to make room for the new message.
+         */
+        DROP_OLDEST,
+
+        /**
+         * The new message is discarded.
+         */
+        DROP_NEWEST,
+
+        /**
+         * The new message is discarded and the connection is disconnected.
+         */
+        DISCONNECT
+    }
+
+    /**
+     * Define the class and the key of a {@link SupersedableMessage}
+     */
+    protected static final class SupersedeKey {
+        private final Class<?> type;
+        private final long key;
+
+        /**
+         * Default constructor for {@link SupersedeKey}
+         *
+         * @param message the message of the key
+         */
+        private SupersedeKey(SupersedableMessage message) {
+            this.type = message.getClass();
+            this.key = message.getSupersedeKey();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof SupersedeKey)) {
+                return false;
+            }
+            final SupersedeKey other = (SupersedeKey) object;
+            return type == other.type && key == other.key;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int hashCode() {
+            return 31 * type.hashCode() + Long.hashCode(key);
+        }
+    }
+
+    /**
+     * Define the place of a {@link SupersedableMessage} in a queue, which newer messages take over
+     * <p>
+     * The place is empty once its message was taken or discarded
+     */
+    @SuppressWarnings("serial")
+    protected static final class PendingMessage extends AtomicReference<Message> implements Message {
+        private final SupersedeKey key;
+        private final Queue<Message> queue;
+
+        /**
+         * Default constructor for {@link PendingMessage}
+         *
+         * @param key     the class and key of the message
+         * @param queue   the queue where the place is
+         * @param message the message queued
+         */
+        private PendingMessage(SupersedeKey key, Queue<Message> queue, Message message) {
+            super(message);
+            this.key = key;
+            this.queue = queue;
+        }
+    }
+
+    /**
+     * Define the place of a switch of {@link FrameFormat} among the queued messages
+     */
+    private static final class FrameFormatSwitch implements Message {
+        private final FrameFormat format;
+
+        /**
+         * Default constructor for {@link FrameFormatSwitch}
+         *
+         * @param format the format of the messages queued after the switch
+         */
+        private FrameFormatSwitch(FrameFormat format) {
+            this.format = format;
         }
     }
 }
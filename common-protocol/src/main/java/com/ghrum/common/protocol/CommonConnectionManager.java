@@ -18,7 +18,11 @@
 package com.ghrum.common.protocol;
 
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoop;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.group.ChannelGroupFuture;
@@ -27,13 +31,26 @@ import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.util.concurrent.GlobalEventExecutor;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+
+import javax.management.JMException;
 
 /**
  * Define the server implementation for any number of {@link Connection}
  */
 public final class CommonConnectionManager {
+    /**
+     * The number of formats a broadcast message can be encoded with
+     */
+    private static final int FRAME_FORMAT_COUNT = FrameFormat.values().length;
+
     /**
      * The protocol for the session
      */
@@ -42,6 +59,14 @@ public final class CommonConnectionManager {
      * A list of the connections
      */
     private final ConcurrentMap<CommonConnection, Boolean> registry = new ConcurrentHashMap<>();
+    /**
+     * The connections of the registry grouped by the event loop that owns their channel
+     */
+    private final ConcurrentMap<EventLoop, Set<CommonConnection>> affinity = new ConcurrentHashMap<>();
+    /**
+     * The rooms of the connections
+     */
+    private final ConcurrentMap<Object, Room> rooms = new ConcurrentHashMap<>();
     /**
      * The channel group for the connections
      */
@@ -49,15 +74,31 @@ public final class CommonConnectionManager {
     /**
      * The boss group for Netty
      */
-    private final EventLoopGroup bossGroup = new NioEventLoopGroup();
+    private EventLoopGroup bossGroup;
     /**
      * The worker group for Netty
      */
-    private final EventLoopGroup workerGroup = new NioEventLoopGroup();
+    private EventLoopGroup workerGroup;
     /**
      * The bootstrap used to initialize Netty.
      */
     private final ServerBootstrap bootstrap = new ServerBootstrap();
+    /**
+     * The dispatch mode of the pulse
+     */
+    private volatile PulseMode pulseMode = PulseMode.SERIAL;
+    /**
+     * The scheduler that drives the pulse, if any
+     */
+    private TickScheduler scheduler;
+    /**
+     * The capture of the traffic of every connection, if any
+     */
+    private TrafficCapture capture;
+    /**
+     * The service that times out the connections
+     */
+    private final ConnectionReaper reaper;
 
     /**
      * Default constructor for {@link CommonConnectionManager}
@@ -66,13 +107,128 @@ public final class CommonConnectionManager {
      */
     public CommonConnectionManager(Protocol protocol) {
         this.protocol = protocol;
+        this.reaper = new ConnectionReaper(this, protocol);
     }
 
     /**
-     * {@inheritDoc}
+     * Pulse every connection of the pool
+     * <p>
+     * Returns once every connection was pulsed, regardless of the {@link PulseMode} of the manager
      */
     public void pulse() {
-        registry.keySet().forEach(CommonConnection::pulse);
+        if (pulseMode == PulseMode.EVENT_LOOP) {
+            pulseOnEventLoop();
+        } else {
+            registry.keySet().forEach(CommonConnection::pulse);
+        }
+    }
+
+    /**
+     * Pulse every connection on the event loop that owns its channel, and wait until every event loop has
+     * finished
+     */
+    private void pulseOnEventLoop() {
+        // The barrier is sized from a snapshot of the event loops, so a loop added
+        // meanwhile is pulsed next time instead of releasing the barrier early
+        final List<Map.Entry<EventLoop, Set<CommonConnection>>> entries = new ArrayList<>(affinity.entrySet());
+        final CountDownLatch barrier = new CountDownLatch(entries.size());
+        for (Map.Entry<EventLoop, Set<CommonConnection>> entry : entries) {
+            final EventLoop loop = entry.getKey();
+            final Set<CommonConnection> connections = entry.getValue();
+            final Runnable task = () -> {
+                try {
+                    connections.forEach(CommonConnection::pulse);
+                } finally {
+                    barrier.countDown();
+                }
+            };
+            if (loop.inEventLoop()) {
+                task.run();
+            } else {
+                loop.execute(task);
+            }
+        }
+        try {
+            barrier.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Starts pulsing every connection at a fixed rate on a dedicated thread
+     *
+     * @param rate   the number of pulses per second
+     * @param policy the policy when a pulse is late
+     * @return the scheduler that drives the pulse
+     */
+    public synchronized TickScheduler start(int rate, TickScheduler.Policy policy) {
+        if (scheduler != null) {
+            throw new IllegalStateException("Cannot start the pulse more than once");
+        }
+        scheduler = new TickScheduler(this::pulse, registry::size, rate, policy);
+        scheduler.start("Protocol-Pulse");
+        return scheduler;
+    }
+
+    /**
+     * Gets the scheduler that drives the pulse
+     *
+     * @return the scheduler that drives the pulse or null if the pulse is driven externally
+     */
+    public synchronized TickScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Gets the service that times out the connections
+     *
+     * @return the reaper of the connections
+     */
+    public ConnectionReaper getReaper() {
+        return reaper;
+    }
+
+    /**
+     * Gets the dispatch mode of the pulse
+     *
+     * @return the dispatch mode of the pulse
+     */
+    public PulseMode getPulseMode() {
+        return pulseMode;
+    }
+
+    /**
+     * Sets the dispatch mode of the pulse
+     *
+     * @param pulseMode the new dispatch mode of the pulse
+     */
+    public void setPulseMode(PulseMode pulseMode) {
+        if (pulseMode == null) {
+            throw new IllegalArgumentException("Trying to set a null pulse mode");
+        }
+        this.pulseMode = pulseMode;
+    }
+
+    /**
+     * Gets the {@link TrafficCapture} of the traffic of every connection
+     *
+     * @return the capture of the traffic, or null if the traffic isn't recorded
+     */
+    public TrafficCapture getCapture() {
+        return capture;
+    }
+
+    /**
+     * Sets the {@link TrafficCapture} of the traffic of every connection
+     * <p>
+     * The capture must be set before the server is initialised, and it's closed by its owner rather than by the
+     * server
+     *
+     * @param capture the capture of the traffic, or null to record nothing
+     */
+    public void setCapture(TrafficCapture capture) {
+        this.capture = capture;
     }
 
     /**
@@ -81,11 +237,23 @@ public final class CommonConnectionManager {
      * @param configuration the configuration of the connection
      */
     public void initialise(Protocol configuration) {
+        configuration.getMessageService().freeze();
+
+        this.bossGroup = new NioEventLoopGroup(1);
+        this.workerGroup = new NioEventLoopGroup();
+
         bootstrap.group(bossGroup, workerGroup)
                 .channel(NioServerSocketChannel.class)
-                .childHandler(new ProtocolChannelInitializer(protocol.getMessageService(), null))    // null -> handler
+                .childHandler(new ProtocolChannelInitializer(configuration.getMessageService(), null, capture))    // null -> handler
+                .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
                 .childOption(ChannelOption.TCP_NODELAY, true)
                 .childOption(ChannelOption.SO_KEEPALIVE, true);
+
+        try {
+            configuration.getMessageService().getMetrics().register(configuration.getClass().getSimpleName());
+        } catch (JMException | IllegalStateException ex) {
+            // <TODO: Wolftein Use some common logger>
+        }
     }
 
     /**
@@ -93,11 +261,20 @@ public final class CommonConnectionManager {
      *
      * @param address the address to bind to
      * @param port    the port to bind to
-     * @return true if netty was able to bind the connection
+     * @return true if netty was able to bind the connection, false if it wasn't or the server wasn't initialised
      */
     public boolean bind(String address, int port) {
+        if (bossGroup == null) {
+            return false;
+        }
         try {
-            group.add(bootstrap.bind(address, port).awaitUninterruptibly().channel());
+            final ChannelFuture future = bootstrap.bind(address, port).awaitUninterruptibly();
+            if (!future.isSuccess()) {
+                // <TODO: Wolftein Use some common logger>
+                future.channel().close();
+                return false;
+            }
+            group.add(future.channel());
         } catch (io.netty.channel.ChannelException ex) {
             // <TODO: Wolftein Use some common logger>
             return false;
@@ -111,6 +288,14 @@ public final class CommonConnectionManager {
      * @param reason the reason for disconnection
      */
     public void stop(String reason) {
+        // Stop pulsing before disconnecting, so no connection
+        // is pulsed while it's being closed
+        final TickScheduler scheduler = getScheduler();
+        if (scheduler != null) {
+            scheduler.stop();
+        }
+        reaper.stop();
+
         // Disconnect all connections that are connected
         // to our channel, sending the kick message
         disconnect(reason);
@@ -123,8 +308,13 @@ public final class CommonConnectionManager {
         } catch (InterruptedException ex) {
             // <TODO: Wolftein Use some common logger>
         }
-        bossGroup.shutdownGracefully();
-        workerGroup.shutdownGracefully();
+        protocol.getMessageService().getMetrics().unregister();
+        if (bossGroup != null) {
+            bossGroup.shutdownGracefully();
+        }
+        if (workerGroup != null) {
+            workerGroup.shutdownGracefully();
+        }
     }
 
     /**
@@ -138,19 +328,136 @@ public final class CommonConnectionManager {
 
     /**
      * Adds a new connection to the pool
+     * <p>
+     * The connection is watched by the {@link ConnectionReaper}, and it's removed from the pool once its channel is
+     * closed
      *
      * @param connection the connection to add to the pool
      */
     public void add(CommonConnection connection) {
         registry.put(connection, true);
+        affinity.compute(connection.channel.eventLoop(), (EventLoop loop, Set<CommonConnection> connections) -> {
+            final Set<CommonConnection> set = (connections != null ? connections : ConcurrentHashMap.newKeySet());
+            set.add(connection);
+            return set;
+        });
+        group.add(connection.channel);
+        reaper.arm(connection);
+        connection.channel.closeFuture().addListener((ChannelFuture future) -> remove(connection));
     }
 
     /**
      * Removes a connection from the pool
+     * <p>
+     * Every message still queued by the connection is released, since the connection won't be pulsed again
      *
      * @param connection the connection to remove from the pool
      */
     public void remove(CommonConnection connection) {
+        reaper.cancel(connection);
         registry.remove(connection);
+        group.remove(connection.channel);
+
+        // The event loop is pruned along with its last connection
+        affinity.computeIfPresent(connection.channel.eventLoop(),
+                (EventLoop loop, Set<CommonConnection> connections) -> {
+                    connections.remove(connection);
+                    return (connections.isEmpty() ? null : connections);
+                });
+        connection.rooms.forEach((Room room) -> leave(room.getKey(), connection));
+        connection.dispose();
+    }
+
+    /**
+     * Gets a room of the pool
+     *
+     * @param key the unique key of the room
+     * @return the room if it has any member, null otherwise
+     */
+    public Room getRoom(Object key) {
+        return rooms.get(key);
+    }
+
+    /**
+     * Adds a connection to a room, creating the room if it doesn't exist
+     *
+     * @param key        the unique key of the room
+     * @param connection the connection to add to the room
+     */
+    public void join(Object key, CommonConnection connection) {
+        Room room;
+        do {
+            room = rooms.computeIfAbsent(key, Room::new);
+        } while (!room.add(connection));
+    }
+
+    /**
+     * Removes a connection from a room, the room is discarded once its last member leaves
+     *
+     * @param key        the unique key of the room
+     * @param connection the connection to remove from the room
+     */
+    public void leave(Object key, CommonConnection connection) {
+        final Room room = rooms.get(key);
+        if (room != null && room.remove(connection) && room.isClosed()) {
+            rooms.remove(key, room);
+        }
+    }
+
+    /**
+     * Sends a message to every member of a room
+     * <p>
+     * The message is encoded only once for every {@link FrameFormat} of the members, and every member is sent a
+     * duplicate of the same frame
+     *
+     * @param key     the unique key of the room
+     * @param message the message to send to the room
+     * @return the number of connections the message was sent to
+     * @throws IOException
+     */
+    public int broadcast(Object key, Message message) throws IOException {
+        final Room room = rooms.get(key);
+        if (room == null) {
+            return 0;
+        }
+        final CommonConnection[] members = room.getMembers();
+        if (members.length == 0) {
+            return 0;
+        }
+        final ByteBuf[] frames = new ByteBuf[FRAME_FORMAT_COUNT];
+        try {
+            for (CommonConnection member : members) {
+                final FrameFormat format = member.getFrameFormat();
+                ByteBuf frame = frames[format.ordinal()];
+                if (frame == null) {
+                    frame = frames[format.ordinal()] = PooledByteBufAllocator.DEFAULT.directBuffer();
+                    protocol.getMessageService().encode(message, frame, format);
+                }
+                member.send(new EncodedMessage(frame.duplicate().retain(), format));
+            }
+        } finally {
+            for (ByteBuf frame : frames) {
+                if (frame != null) {
+                    frame.release();
+                }
+            }
+        }
+        return members.length;
+    }
+
+    /**
+     * Define all possible dispatch modes of {@link CommonConnectionManager#pulse()}
+     */
+    public enum PulseMode {
+        /**
+         * Every connection is pulsed serially on the thread calling the pulse.
+         */
+        SERIAL,
+
+        /**
+         * Every connection is pulsed on the event loop that owns its channel, so inbound handling and outbound
+         * flushing run in parallel across the worker group without any cross-thread handoff.
+         */
+        EVENT_LOOP
     }
 }
@@ -51,6 +51,23 @@ public interface Connection {
      */
     public void setState(State state);
 
+    /**
+     * Gets the {@link FrameFormat} of the messages sent by the connection
+     *
+     * @return the format of the frames sent by this connection
+     */
+    public FrameFormat getFrameFormat();
+
+    /**
+     * Sets the {@link FrameFormat} of the messages sent by the connection
+     * <p>
+     * Messages sent before the call keep the previous format. The peer must already be known to understand the new
+     * format, usually from the handshake of the protocol, and the format must be enabled by the service of the protocol
+     *
+     * @param format the new format of the frames sent by this connection
+     */
+    public void setFrameFormat(FrameFormat format);
+
     /**
      * Gets the attached object of the connection
      *
@@ -80,6 +97,23 @@ public interface Connection {
      */
     public void send(boolean isUrgent, Message message);
 
+    /**
+     * Sends a message across the network
+     *
+     * @param priority the priority of the message
+     * @param message  the message to send to the network
+     */
+    public void send(Priority priority, Message message);
+
+    /**
+     * Runs a task on the next pulse of the connection
+     * <p>
+     * This is how blocking handlers hand their results back to the pulse
+     *
+     * @param task the task to run
+     */
+    public void execute(Runnable task);
+
     /**
      * Sends any amount of messages across the network
      *
@@ -158,6 +192,26 @@ public interface Connection {
         GAME
     }
 
+    /**
+     * Define all possible priorities of a message sent by {@link Connection}
+     */
+    public enum Priority {
+        /**
+         * The message is written and flushed immediately, same as an urgent message.
+         */
+        CRITICAL,
+
+        /**
+         * The message is queued and sent on the next pulse.
+         */
+        NORMAL,
+
+        /**
+         * The message is queued and sent after every normal message, once the connection isn't congested.
+         */
+        BULK
+    }
+
     /**
      * Define an exception handler for any exception that occurs handling a message
      */
@@ -0,0 +1,258 @@
+/**
+ * This file is part of Argentum Online.
+ *
+ * Copyright (c) 2014 Argentum Online <https://github.com/orgs/Argentum-Online/members>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghrum.common.protocol;
+
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Define the service that times out the connections of a {@link CommonConnectionManager}
+ * <p>
+ * Every connection has a single timeout on a hashed wheel, armed at its nearest deadline: the deadline of its state
+ * while it's exchanging the handshake or the identification, and the read idle timeout and the keepalive interval
+ * while in game. Reads and writes only store the time of the last activity in the connection, so they never touch the
+ * wheel. When the timeout expires the deadlines are checked against the actual activity, and the timeout is armed
+ * again unless the connection is reaped. Arming and cancelling a timeout are constant time
+ */
+public final class ConnectionReaper {
+    /**
+     * The default deadline of the handshake exchange, in milliseconds
+     */
+    public static final long DEFAULT_HANDSHAKE_TIMEOUT = 10_000L;
+    /**
+     * The default deadline of the identification exchange, in milliseconds
+     */
+    public static final long DEFAULT_IDENTIFICATION_TIMEOUT = 30_000L;
+    /**
+     * The default time without receiving any message before a connection in game is reaped, in milliseconds
+     */
+    public static final long DEFAULT_READ_IDLE_TIMEOUT = 60_000L;
+    /**
+     * The default time without sending any message before a keepalive is sent, in milliseconds
+     */
+    public static final long DEFAULT_KEEPALIVE_INTERVAL = 15_000L;
+
+    private static final long TICK_DURATION = 100L;
+    private static final long RECHECK_INTERVAL = 1_000L;
+    private static final int TICKS_PER_WHEEL = 1024;
+
+    private final CommonConnectionManager manager;
+    private final Protocol protocol;
+    private final HashedWheelTimer timer;
+    private volatile long handshakeTimeout = TimeUnit.MILLISECONDS.toNanos(DEFAULT_HANDSHAKE_TIMEOUT);
+    private volatile long identificationTimeout = TimeUnit.MILLISECONDS.toNanos(DEFAULT_IDENTIFICATION_TIMEOUT);
+    private volatile long readIdleTimeout = TimeUnit.MILLISECONDS.toNanos(DEFAULT_READ_IDLE_TIMEOUT);
+    private volatile long keepAliveInterval = TimeUnit.MILLISECONDS.toNanos(DEFAULT_KEEPALIVE_INTERVAL);
+
+    /**
+     * Default constructor for {@link ConnectionReaper}
+     *
+     * @param manager  the manager of the connections
+     * @param protocol the protocol of the connections
+     */
+    ConnectionReaper(CommonConnectionManager manager, Protocol protocol) {
+        this.manager = manager;
+        this.protocol = protocol;
+        this.timer = new HashedWheelTimer(new DefaultThreadFactory("Protocol-Reaper", true), TICK_DURATION,
+                TimeUnit.MILLISECONDS, TICKS_PER_WHEEL);
+    }
+
+    /**
+     * Sets the deadline of the handshake exchange
+     *
+     * @param timeout the deadline in milliseconds, or 0 to disable it
+     */
+    public void setHandshakeTimeout(long timeout) {
+        this.handshakeTimeout = TimeUnit.MILLISECONDS.toNanos(timeout);
+    }
+
+    /**
+     * Sets the deadline of the identification exchange
+     *
+     * @param timeout the deadline in milliseconds, or 0 to disable it
+     */
+    public void setIdentificationTimeout(long timeout) {
+        this.identificationTimeout = TimeUnit.MILLISECONDS.toNanos(timeout);
+    }
+
+    /**
+     * Sets the time without receiving any message before a connection in game is reaped
+     *
+     * @param timeout the timeout in milliseconds, or 0 to disable it
+     */
+    public void setReadIdleTimeout(long timeout) {
+        this.readIdleTimeout = TimeUnit.MILLISECONDS.toNanos(timeout);
+    }
+
+    /**
+     * Sets the time without sending any message before a keepalive is sent
+     * <p>
+     * The keepalive is given by {@link Protocol#getKeepAliveMessage()}
+     *
+     * @param interval the interval in milliseconds, or 0 to disable it
+     */
+    public void setKeepAliveInterval(long interval) {
+        this.keepAliveInterval = TimeUnit.MILLISECONDS.toNanos(interval);
+    }
+
+    /**
+     * Arms the timeout of a connection
+     *
+     * @param connection the connection to watch
+     */
+    void arm(CommonConnection connection) {
+        schedule(connection, System.nanoTime(), null, new Task(connection));
+    }
+
+    /**
+     * Cancels the timeout of a connection
+     *
+     * @param connection the connection to stop watching
+     */
+    void cancel(CommonConnection connection) {
+        final Timeout timeout;
+        synchronized (connection) {
+            timeout = connection.timeout;
+            connection.timeout = null;
+        }
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+    /**
+     * Stops the timer, every pending timeout is discarded
+     */
+    void stop() {
+        timer.stop();
+    }
+
+    /**
+     * Schedules the timeout of a connection at its nearest deadline
+     * <p>
+     * Nothing is scheduled when the timeout of the connection was replaced or cancelled meanwhile
+     *
+     * @param connection the connection to watch
+     * @param now        the current time, in nanoseconds
+     * @param previous   the timeout that is replaced, or null if the connection isn't watched yet
+     * @param task       the task of the connection
+     */
+    private void schedule(CommonConnection connection, long now, Timeout previous, Task task) {
+        final long deadline = getDeadline(connection);
+        long next = (deadline != Long.MAX_VALUE ? deadline : now + TimeUnit.MILLISECONDS.toNanos(RECHECK_INTERVAL));
+        final long keepAlive = keepAliveInterval;
+        if (keepAlive > 0L && connection.getState() == Connection.State.GAME) {
+            next = Math.min(next, connection.lastWriteTime + keepAlive);
+        }
+        synchronized (connection) {
+            if (connection.timeout == previous) {
+                connection.timeout = timer.newTimeout(task, Math.max(0L, next - now), TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    /**
+     * Gets the deadline of a connection in its current state
+     *
+     * @return the deadline in nanoseconds, or {@link Long#MAX_VALUE} if the connection has no deadline
+     */
+    private long getDeadline(CommonConnection connection) {
+        final long timeout;
+        final long since;
+        switch (connection.getState()) {
+            case EXCHANGE_HANDSHAKE:
+                timeout = handshakeTimeout;
+                since = connection.stateTime;
+                break;
+            case EXCHANGE_IDENTIFICATION:
+                timeout = identificationTimeout;
+                since = connection.stateTime;
+                break;
+            default:
+                timeout = readIdleTimeout;
+                since = Math.max(connection.stateTime, connection.lastReadTime);
+                break;
+        }
+        return (timeout > 0L ? since + timeout : Long.MAX_VALUE);
+    }
+
+    /**
+     * Checks the deadlines of a connection after its timeout expired
+     */
+    private void expire(CommonConnection connection, Timeout timeout) {
+        if (!connection.isActive()) {
+            manager.remove(connection);
+            return;
+        }
+        final long now = System.nanoTime();
+        final long deadline = getDeadline(connection);
+        if (deadline != Long.MAX_VALUE && now - deadline >= 0L) {
+            connection.disconnect("Timed out in state " + connection.getState());
+            connection.channel.close();
+            manager.remove(connection);
+            return;
+        }
+        final long keepAlive = keepAliveInterval;
+        if (keepAlive > 0L && connection.getState() == Connection.State.GAME
+                && now - connection.lastWriteTime >= keepAlive) {
+            final Message message = protocol.getKeepAliveMessage();
+            if (message != null) {
+                connection.send(Connection.Priority.CRITICAL, message);
+            }
+            connection.lastWriteTime = now;
+        }
+        schedule(connection, now, timeout, (Task) timeout.task());
+    }
+
+    /**
+     * Define the {@link TimerTask} of a connection
+     */
+    private final class Task implements TimerTask {
+        private final CommonConnection connection;
+
+        /**
+         * Default constructor for {@link Task}
+         *
+         * @param connection the connection of the task
+         */
+        private Task(CommonConnection connection) {
+            this.connection = connection;
+        }
+
+        /**
+         * {@inheritDoc}
+         * <p>
+         * The timeout of the connection is read under its lock, so a timeout that expires before it was stored by
+         * {@link #schedule(CommonConnection, long, Timeout, Task)} waits for it instead of being dropped
+         */
+        @Override
+        public void run(Timeout timeout) throws Exception {
+            final boolean isCurrent;
+            synchronized (connection) {
+                isCurrent = (connection.timeout == timeout);
+            }
+            if (isCurrent) {
+                expire(connection, timeout);
+            }
+        }
+    }
+}
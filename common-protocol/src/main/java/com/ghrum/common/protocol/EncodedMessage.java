@@ -0,0 +1,62 @@
+/**
+ * This file is part of Argentum Online.
+ *
+ * Copyright (c) 2014 Argentum Online <https://github.com/orgs/Argentum-Online/members>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghrum.common.protocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.DefaultByteBufHolder;
+
+/**
+ * Define a {@link Message} that was already encoded into a frame
+ * <p>
+ * The frame contains both the header and the body of the message, and it is written to the network as it is. This
+ * is used to encode a message only once and send it to many connections
+ */
+public final class EncodedMessage extends DefaultByteBufHolder implements Message {
+    private final FrameFormat format;
+
+    /**
+     * Default constructor for {@link EncodedMessage}
+     *
+     * @param frame the buffer that contains the header and the body of the message, in {@link FrameFormat#FIXED}
+     */
+    public EncodedMessage(ByteBuf frame) {
+        this(frame, FrameFormat.FIXED);
+    }
+
+    /**
+     * Constructor for {@link EncodedMessage}
+     *
+     * @param frame  the buffer that contains the header and the body of the message
+     * @param format the format of the header of the frame
+     */
+    public EncodedMessage(ByteBuf frame, FrameFormat format) {
+        super(frame);
+        this.format = format;
+    }
+
+    /**
+     * Gets the {@link FrameFormat} of the frame
+     * <p>
+     * A connection that writes another format rewrites the header of the frame, and copies its body
+     *
+     * @return the format of the header of the frame
+     */
+    public FrameFormat getFrameFormat() {
+        return format;
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * This file is part of Argentum Online.
+ *
+ * Copyright (c) 2014 Argentum Online <https://github.com/orgs/Argentum-Online/members>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghrum.common.protocol;
+
+import java.util.Arrays;
+
+/**
+ * Define the token buckets of the frames received by a single channel
+ * <p>
+ * There is a bucket for every opcode, whose limit is given by the codec for the current state of the connection, and
+ * a bucket for the frames dropped by those limits, which tells apart clients that keep flooding. Buckets are stored
+ * in primitive arrays and are not thread-safe, they must only be used from the event loop of the channel
+ */
+final class FloodGuard {
+    private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+
+    private final MessageLookupService service;
+    private final RateLimit violationLimit;
+    private final double[] tokens;
+    private final long[] refills;
+    private double violationTokens;
+    private long violationRefill;
+
+    /**
+     * Default constructor for {@link FloodGuard}
+     *
+     * @param service        the service of the guard
+     * @param size           the number of opcodes
+     * @param violationLimit the limit of the frames dropped before the channel is closed
+     * @param now            the current time, in nanoseconds
+     */
+    FloodGuard(MessageLookupService service, int size, RateLimit violationLimit, long now) {
+        this.service = service;
+        this.violationLimit = violationLimit;
+        this.tokens = new double[size];
+        this.refills = new long[size];
+        this.violationTokens = violationLimit.getBurst();
+        this.violationRefill = now;
+        Arrays.fill(tokens, -1.0);
+    }
+
+    /**
+     * Takes a token for a frame
+     *
+     * @param opcode the opcode of the frame
+     * @param state  the state of the connection
+     * @param now    the current time, in nanoseconds
+     * @return true if the frame is within its limit, false if it must be dropped
+     */
+    boolean tryAcquire(int opcode, Connection.State state, long now) {
+        final RateLimit limit = service.getRateLimit(opcode, state);
+        if (limit == null) {
+            return true;
+        }
+        double available = tokens[opcode];
+        if (available < 0.0) {
+            available = limit.getBurst();
+        } else {
+            available = refill(available, limit, now - refills[opcode]);
+        }
+        refills[opcode] = now;
+
+        final boolean isAcquired = available >= 1.0;
+        tokens[opcode] = isAcquired ? available - 1.0 : available;
+        return isAcquired;
+    }
+
+    /**
+     * Records a dropped frame
+     *
+     * @param now the current time, in nanoseconds
+     * @return true if the channel is still tolerated, false if it must be closed
+     */
+    boolean tolerate(long now) {
+        violationTokens = refill(violationTokens, violationLimit, now - violationRefill);
+        violationRefill = now;
+        if (violationTokens < 1.0) {
+            return false;
+        }
+        violationTokens -= 1.0;
+        return true;
+    }
+
+    /**
+     * Refills a bucket
+     */
+    private static double refill(double available, RateLimit limit, long elapsed) {
+        return Math.min(limit.getBurst(), available + elapsed * limit.getPermitsPerSecond() / NANOS_PER_SECOND);
+    }
+}
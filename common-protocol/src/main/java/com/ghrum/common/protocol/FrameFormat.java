@@ -0,0 +1,361 @@
+/**
+ * This file is part of Argentum Online.
+ *
+ * Copyright (c) 2014 Argentum Online <https://github.com/orgs/Argentum-Online/members>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghrum.common.protocol;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Define all possible formats of the header of a frame
+ * <p>
+ * Every connection starts with {@link #FIXED}. Once the handshake of the protocol tells that the peer understands
+ * another format, {@link Connection#setFrameFormat(FrameFormat)} sends a control frame in the previous format and
+ * every frame after it is written in the new one. The decoder of the peer switches on that same control frame, so
+ * both directions are negotiated on their own and no frame is ever read with the wrong format. A peer only accepts
+ * control frames after the handshake, and only to the formats enabled on its side.
+ * <p>
+ * {@link #FIXED} is the legacy header, and every byte of it keeps its legacy meaning unless another format was
+ * enabled by {@link MessageLookupService#enableFrameFormat(FrameFormat)}, in which case {@link #CONTROL_OPCODE} is
+ * reserved for control frames. Only the negotiated formats carry {@link #COMPRESSED_FLAG} in the first byte of the
+ * header, whose remaining bits hold the opcode
+ */
+public enum FrameFormat {
+    /**
+     * The opcode in a single byte followed by the length of the body in two bytes, without compression.
+     */
+    FIXED {
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getMaxOpcode() {
+            return 0xFF;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean isCompressionSupported() {
+            return false;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getMaxBodyLength() {
+            return 0xFFFF;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getHeaderLength(ByteBuf buffer, int index, int end) {
+            return (end - index >= 3 ? 3 : 0);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getOpcode(ByteBuf buffer, int index) {
+            return buffer.getUnsignedByte(index);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean isCompressed(ByteBuf buffer, int index) {
+            return false;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getBodyLength(ByteBuf buffer, int index) {
+            return buffer.getUnsignedShort(index + 1);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void writeHeader(ByteBuf buffer, int opcode, boolean isCompressed, int length) {
+            if (isCompressed) {
+                throw new IllegalArgumentException("Format " + this + " doesn't support compressed frames");
+            }
+            buffer.writeByte(opcode).writeShort(length);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void setBodyLength(ByteBuf buffer, int index, int bodyIndex) {
+            buffer.setShort(index + 1, buffer.writerIndex() - bodyIndex);
+        }
+    },
+
+    /**
+     * The opcode in a single byte, or in an escape byte followed by a varint for {@link #EXTENDED_OPCODE} and above,
+     * followed by the length of the body as a varint.
+     * <p>
+     * A frame with an opcode below {@link #EXTENDED_OPCODE} and a body shorter than 128 bytes has a header of only
+     * two bytes
+     */
+    VARINT {
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getMaxOpcode() {
+            return Integer.MAX_VALUE;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean isCompressionSupported() {
+            return true;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getMaxBodyLength() {
+            return 0xFFFFFF;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getHeaderLength(ByteBuf buffer, int index, int end) {
+            if (index >= end) {
+                return 0;
+            }
+            int offset = index + 1;
+            if ((buffer.getUnsignedByte(index) & ~COMPRESSED_FLAG) == EXTENDED_OPCODE) {
+                final int length = CodecSupport.getVarIntLength(buffer, offset, end);
+                if (length <= 0) {
+                    return length;
+                }
+                offset += length;
+            }
+            final int length = CodecSupport.getVarIntLength(buffer, offset, end);
+            return (length <= 0 ? length : offset + length - index);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getOpcode(ByteBuf buffer, int index) {
+            final int opcode = buffer.getUnsignedByte(index) & ~COMPRESSED_FLAG;
+            return (opcode == EXTENDED_OPCODE ? EXTENDED_OPCODE + CodecSupport.getVarInt(buffer, index + 1) : opcode);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getBodyLength(ByteBuf buffer, int index) {
+            return CodecSupport.getVarInt(buffer, getLengthIndex(buffer, index));
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void writeHeader(ByteBuf buffer, int opcode, boolean isCompressed, int length) {
+            final int flag = (isCompressed ? COMPRESSED_FLAG : 0);
+            if (opcode < EXTENDED_OPCODE || opcode == CONTROL_OPCODE) {
+                buffer.writeByte(opcode | flag);
+            } else {
+                buffer.writeByte(EXTENDED_OPCODE | flag);
+                CodecSupport.writeVarInt(buffer, opcode - EXTENDED_OPCODE);
+            }
+            CodecSupport.writeVarInt(buffer, length);
+        }
+
+        /**
+         * {@inheritDoc}
+         * <p>
+         * A length shorter than the reserved field is padded with continuation bytes, and a longer one moves the
+         * body forward within the same buffer
+         */
+        @Override
+        public void setBodyLength(ByteBuf buffer, int index, int bodyIndex) {
+            final int lengthIndex = getLengthIndex(buffer, index);
+            final int length = buffer.writerIndex() - bodyIndex;
+            final int shift = CodecSupport.getVarIntLength(length) - (bodyIndex - lengthIndex);
+            if (shift > 0) {
+                buffer.ensureWritable(shift);
+                buffer.setBytes(bodyIndex + shift, buffer, bodyIndex, length);
+                buffer.writerIndex(buffer.writerIndex() + shift);
+                bodyIndex += shift;
+            }
+            CodecSupport.setVarInt(buffer, lengthIndex, length, bodyIndex - lengthIndex);
+        }
+
+        /**
+         * Gets the index of the length of the body of a frame
+         *
+         * @param buffer the buffer that contains the frame
+         * @param index  the index of the frame
+         * @return the index of the length of the body
+         */
+        private int getLengthIndex(ByteBuf buffer, int index) {
+            if ((buffer.getUnsignedByte(index) & ~COMPRESSED_FLAG) != EXTENDED_OPCODE) {
+                return index + 1;
+            }
+            return index + 1 + CodecSupport.getVarIntLength(buffer, index + 1, buffer.writerIndex());
+        }
+    };
+
+    /**
+     * The bit of the first byte of the header that flags a compressed body, in the formats that support compression
+     */
+    public static final int COMPRESSED_FLAG = 0x80;
+    /**
+     * The opcode of the control frames, whose body is the version of the format of the frames that follow
+     */
+    public static final int CONTROL_OPCODE = 0x7F;
+    /**
+     * The first opcode written as a varint by {@link #VARINT}
+     */
+    public static final int EXTENDED_OPCODE = CONTROL_OPCODE - 1;
+
+    /**
+     * Gets the version of the format, as written in control frames
+     *
+     * @return the version of the format
+     */
+    public int getVersion() {
+        return ordinal();
+    }
+
+    /**
+     * Gets the max opcode of a message
+     *
+     * @return the max opcode of a message
+     */
+    public abstract int getMaxOpcode();
+
+    /**
+     * Gets if the header of the format can flag a compressed body
+     *
+     * @return true if the format supports compressed frames
+     */
+    public abstract boolean isCompressionSupported();
+
+    /**
+     * Gets the max length of the body of a message
+     *
+     * @return the max length of the body of a message
+     */
+    public abstract int getMaxBodyLength();
+
+    /**
+     * Gets the length of the header of a frame
+     *
+     * @param buffer the buffer that contains the frame
+     * @param index  the index of the frame
+     * @param end    the index after the last readable byte of the buffer
+     * @return the length of the header, 0 if the header isn't readable yet or -1 if the header is malformed
+     */
+    public abstract int getHeaderLength(ByteBuf buffer, int index, int end);
+
+    /**
+     * Gets the opcode of a frame, without {@link #COMPRESSED_FLAG} when the format supports compression
+     *
+     * @param buffer the buffer that contains the frame
+     * @param index  the index of the frame
+     * @return the opcode of the frame
+     */
+    public abstract int getOpcode(ByteBuf buffer, int index);
+
+    /**
+     * Gets if the body of a frame is compressed
+     *
+     * @param buffer the buffer that contains the frame
+     * @param index  the index of the frame
+     * @return true if the body of the frame is compressed
+     */
+    public boolean isCompressed(ByteBuf buffer, int index) {
+        return (buffer.getUnsignedByte(index) & COMPRESSED_FLAG) != 0;
+    }
+
+    /**
+     * Gets the length of the body of a frame
+     *
+     * @param buffer the buffer that contains the frame
+     * @param index  the index of the frame
+     * @return the length of the body of the frame
+     */
+    public abstract int getBodyLength(ByteBuf buffer, int index);
+
+    /**
+     * Writes the header of a frame
+     * <p>
+     * When the body is written after the header, its length is a hint that reserves room for the length of the body
+     * until {@link #setBodyLength(ByteBuf, int, int)} is called
+     *
+     * @param buffer       the buffer where the header is written
+     * @param opcode       the opcode of the frame
+     * @param isCompressed true if the body of the frame is compressed
+     * @param length       the length of the body of the frame
+     */
+    public abstract void writeHeader(ByteBuf buffer, int opcode, boolean isCompressed, int length);
+
+    /**
+     * Sets the length of the body of a frame, which ends at the writer index of the buffer
+     *
+     * @param buffer    the buffer that contains the frame
+     * @param index     the index of the frame
+     * @param bodyIndex the index of the body of the frame
+     */
+    public abstract void setBodyLength(ByteBuf buffer, int index, int bodyIndex);
+
+    /**
+     * Writes a control frame that switches to another format
+     *
+     * @param buffer the buffer where the frame is written
+     * @param format the format of the frames that follow
+     */
+    public void writeControl(ByteBuf buffer, FrameFormat format) {
+        writeHeader(buffer, CONTROL_OPCODE, false, 1);
+        buffer.writeByte(format.getVersion());
+    }
+
+    /**
+     * Gets a format given its version
+     *
+     * @param version the version of the format
+     * @return the format, or null if the version is unknown
+     */
+    public static FrameFormat valueOf(int version) {
+        final FrameFormat[] formats = values();
+        return (version >= 0 && version < formats.length ? formats[version] : null);
+    }
+}
@@ -0,0 +1,335 @@
+/**
+ * This file is part of Argentum Online.
+ *
+ * Copyright (c) 2014 Argentum Online <https://github.com/orgs/Argentum-Online/members>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghrum.common.protocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.AbstractChannel;
+import io.netty.channel.ChannelConfig;
+import io.netty.channel.ChannelMetadata;
+import io.netty.channel.ChannelOutboundBuffer;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.DefaultChannelConfig;
+import io.netty.channel.EventLoop;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * Define a session of a {@link NodeLink}, a channel multiplexed over the channel of the link
+ * <p>
+ * The session runs on the event loop of its link, and its remote address is the address of the remote end of the
+ * session (such as the address of a player connected to a gateway) rather than the address of the peer node. Every
+ * write takes from the window granted by the peer and waits once the window is exhausted, and the session isn't
+ * writable while the link isn't either, so {@link CommonConnection} holds its bulk messages on a congested link.
+ */
+public final class LinkChannel extends AbstractChannel {
+    private static final ChannelMetadata METADATA = new ChannelMetadata(false);
+
+    private final NodeLink link;
+    private final int session;
+    private final InetSocketAddress remoteAddress;
+    private final boolean isAccepted;
+    private final ChannelConfig config = new DefaultChannelConfig(this);
+    private final Queue<ByteBuf> inboundQueue = new ArrayDeque<>();
+    private volatile boolean isOpen = true;
+    private boolean isClosedByPeer;
+    private boolean isReadPending;
+    private int credit;
+    private int consumed;
+
+    /**
+     * Default constructor for {@link LinkChannel}
+     *
+     * @param link          the link of the session
+     * @param session       the session id
+     * @param remoteAddress the address of the remote end of the session
+     * @param isAccepted    true if the session was opened by the peer
+     * @param credit        the number of bytes the peer granted
+     */
+    LinkChannel(NodeLink link, int session, InetSocketAddress remoteAddress, boolean isAccepted, int credit) {
+        super(link.getChannel(), link.getChannel().eventLoop());
+        this.link = link;
+        this.session = session;
+        this.remoteAddress = remoteAddress;
+        this.isAccepted = isAccepted;
+        this.credit = credit;
+    }
+
+    /**
+     * Gets the link of the session
+     *
+     * @return the link of the session
+     */
+    public NodeLink getLink() {
+        return link;
+    }
+
+    /**
+     * Gets the session id
+     *
+     * @return the id of the session in its link
+     */
+    public int getSession() {
+        return session;
+    }
+
+    /**
+     * Gets if the session was opened by the peer
+     *
+     * @return true if the session was opened by the peer, false if it was opened by this node
+     */
+    public boolean isAccepted() {
+        return isAccepted;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ChannelMetadata metadata() {
+        return METADATA;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ChannelConfig config() {
+        return config;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isOpen() {
+        return isOpen;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isActive() {
+        return isOpen && isRegistered();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isWritable() {
+        return super.isWritable() && link.getChannel().isWritable();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public InetSocketAddress remoteAddress() {
+        return remoteAddress;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean isCompatible(EventLoop loop) {
+        // A session always runs on the event loop of its link
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected SocketAddress localAddress0() {
+        return link.getChannel().localAddress();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected SocketAddress remoteAddress0() {
+        return remoteAddress;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void doRegister() throws Exception {
+        link.register(this);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void doBind(SocketAddress localAddress) throws Exception {
+        throw new UnsupportedOperationException("Cannot bind a session of a node link");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void doDisconnect() throws Exception {
+        doClose();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void doClose() throws Exception {
+        if (!isOpen) {
+            return;
+        }
+        isOpen = false;
+        ByteBuf payload;
+        while ((payload = inboundQueue.poll()) != null) {
+            payload.release();
+        }
+        link.unregister(this, isClosedByPeer);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void doBeginRead() throws Exception {
+        isReadPending = true;
+        deliver();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Every buffer is written as {@link NodeLink.Type#DATA} frames of up to {@link NodeLink#MAX_DATA_LENGTH} bytes,
+     * without copying it, for as long as the peer granted bytes to the session
+     */
+    @Override
+    protected void doWrite(ChannelOutboundBuffer in) throws Exception {
+        while (credit > 0) {
+            final Object message = in.current();
+            if (message == null) {
+                break;
+            }
+            if (!(message instanceof ByteBuf)) {
+                in.remove(new UnsupportedOperationException("Cannot write " + message.getClass().getSimpleName()
+                        + " to a session of a node link"));
+                continue;
+            }
+            final ByteBuf buffer = (ByteBuf) message;
+            final int length = Math.min(Math.min(buffer.readableBytes(), credit), NodeLink.MAX_DATA_LENGTH);
+            if (length > 0) {
+                link.writeData(session, buffer.readSlice(length).retain());
+                credit -= length;
+                in.progress(length);
+            }
+            if (!buffer.isReadable()) {
+                in.remove();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected AbstractUnsafe newUnsafe() {
+        return new LinkUnsafe();
+    }
+
+    /**
+     * Handle a chunk of the bytes of the session, which is read once the session is reading
+     *
+     * @param payload the bytes of the session, owned by the session
+     */
+    void dataReceived(ByteBuf payload) {
+        if (!isOpen) {
+            payload.release();
+            return;
+        }
+        inboundQueue.add(payload);
+        if (isReadPending) {
+            deliver();
+        }
+    }
+
+    /**
+     * Handle a grant of more bytes, and writes the bytes that were waiting for it
+     *
+     * @param granted the number of bytes granted
+     */
+    void creditReceived(int granted) {
+        credit += granted;
+        if (isOpen && credit > 0) {
+            unsafe().flush();
+        }
+    }
+
+    /**
+     * Handle the closure of the session by the peer
+     */
+    void closeReceived() {
+        isClosedByPeer = true;
+        unsafe().close(unsafe().voidPromise());
+    }
+
+    /**
+     * Reads every queued chunk of the session, and grants the bytes that were read back to the peer
+     */
+    private void deliver() {
+        if (inboundQueue.isEmpty()) {
+            return;
+        }
+        isReadPending = false;
+        ByteBuf payload;
+        while ((payload = inboundQueue.poll()) != null) {
+            final int length = payload.readableBytes();
+            pipeline().fireChannelRead(payload);
+
+            // Grant the bytes in batches of half the window, so the peer
+            // never waits for a grant while the session is reading
+            consumed += length;
+            if (consumed >= link.getWindow() / 2 && isOpen) {
+                link.writeCredit(session, consumed);
+                consumed = 0;
+            }
+        }
+        pipeline().fireChannelReadComplete();
+    }
+
+    /**
+     * Define the {@link AbstractUnsafe} of {@link LinkChannel}
+     */
+    private final class LinkUnsafe extends AbstractUnsafe {
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void connect(SocketAddress remoteAddress, SocketAddress localAddress, ChannelPromise promise) {
+            promise.setFailure(new UnsupportedOperationException("Cannot connect a session of a node link"));
+        }
+    }
+}
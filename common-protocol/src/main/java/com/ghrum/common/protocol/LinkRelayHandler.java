@@ -0,0 +1,145 @@
+/**
+ * This file is part of Argentum Online.
+ *
+ * Copyright (c) 2014 Argentum Online <https://github.com/orgs/Argentum-Online/members>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghrum.common.protocol;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerAdapter;
+import io.netty.channel.ChannelHandlerContext;
+
+import java.net.InetSocketAddress;
+
+/**
+ * Define the handler of a gateway that relays the bytes of a player to a session of a {@link NodeLink}
+ * <p>
+ * The gateway doesn't decode the protocol, every byte is relayed as it is in both directions, so the world node runs
+ * the whole pipeline of the connection. Both channels only read while the other is writable, so a slow player stops
+ * its session and a session without window stops its player, without buffering their bytes in the gateway
+ */
+public final class LinkRelayHandler extends ChannelHandlerAdapter {
+    private final NodeLink link;
+    private volatile Channel peer;
+
+    /**
+     * Default constructor for {@link LinkRelayHandler}
+     *
+     * @param link the link where the session of every player is opened
+     */
+    public LinkRelayHandler(NodeLink link) {
+        this.link = link;
+    }
+
+    /**
+     * Constructor for {@link LinkRelayHandler} of the session of a player
+     *
+     * @param peer the channel of the player
+     */
+    private LinkRelayHandler(Channel peer) {
+        this.link = null;
+        this.peer = peer;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+        ctx.channel().config().setAutoRead(false);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        final Channel channel = ctx.channel();
+        if (link == null) {
+            channel.read();
+        } else {
+            link.open((InetSocketAddress) channel.remoteAddress(), new LinkRelayHandler(channel))
+                    .addListener((ChannelFuture future) -> {
+                        if (!future.isSuccess()) {
+                            channel.close();
+                            return;
+                        }
+                        // The player may have left meanwhile, and its channel may
+                        // have missed the session, so close the session here too
+                        peer = future.channel();
+                        if (channel.isActive()) {
+                            channel.read();
+                        } else {
+                            future.channel().close();
+                        }
+                    });
+        }
+        super.channelActive(ctx);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        peer.write(msg);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+        final Channel channel = peer;
+        channel.flush();
+        if (channel.isWritable()) {
+            ctx.read();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        final Channel channel = peer;
+        if (channel != null && ctx.channel().isWritable()) {
+            channel.read();
+        }
+        super.channelWritabilityChanged(ctx);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        final Channel channel = peer;
+        if (channel != null) {
+            channel.close();
+        }
+        super.channelInactive(ctx);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+        // <TODO: Wolftein Use some common logger>
+        ctx.close();
+    }
+}
@@ -25,6 +25,11 @@ import java.io.IOException;
  * Represent the codec for a type of {@link Message}
  */
 public abstract class MessageCodec<T extends Message> {
+    /**
+     * The compression threshold of messages that are never compressed
+     */
+    public static final int NO_COMPRESSION = -1;
+
     private final Class<T> clazz;
     private final int opcode;
     private final Connection.State state;
@@ -69,8 +74,49 @@ public abstract class MessageCodec<T extends Message> {
         return state;
     }
 
+    /**
+     * Gets if the message can be received by a connection in the given state
+     * <p>
+     * Frames of messages that aren't allowed in the state of the connection are rejected before their body is read.
+     * Codec of messages allowed in many states should override this method
+     *
+     * @param state the state of the connection
+     * @return true if the message can be received in the given state
+     */
+    public boolean isAllowed(Connection.State state) {
+        return state == this.state;
+    }
+
+    /**
+     * Gets the min length of the body of a message to be compressed
+     * <p>
+     * Codec of large and highly compressible messages should override this method, small messages are never worth
+     * compressing
+     *
+     * @return the min length of the body of a message to be compressed, or {@link #NO_COMPRESSION}
+     */
+    public int getCompressionThreshold() {
+        return NO_COMPRESSION;
+    }
+
+    /**
+     * Gets the limit of the received messages of a connection in the given state
+     * <p>
+     * The limit is checked on the header of every frame before its body is decoded, frames over the limit are
+     * dropped and connections that keep exceeding it are closed
+     *
+     * @param state the state of the connection
+     * @return the limit of the received messages, or null if they're unlimited
+     */
+    public RateLimit getRateLimit(Connection.State state) {
+        return null;
+    }
+
     /**
      * Encode the message
+     * <p>
+     * This method is only used as a fallback by {@link #encode(Message, ByteBuf)}, codec should prefer to override
+     * the latter and encode directly into the given buffer
      *
      * @param message the message to encode
      * @return a buffer containing the message encoded
@@ -80,8 +126,33 @@ public abstract class MessageCodec<T extends Message> {
         return null;
     }
 
+    /**
+     * Encode the message into the given buffer
+     * <p>
+     * The buffer is owned by the caller (usually a pooled buffer of the channel) and already contains the header of
+     * the message, the codec must only append the body of the message after the current writer index
+     *
+     * @param message the message to encode
+     * @param out     the buffer where the message's bytes are written
+     * @throws IOException
+     */
+    public void encode(T message, ByteBuf out) throws IOException {
+        final ByteBuf body = encode(message);
+        if (body == null) {
+            throw new IOException("Codec doesn't support encoding: " + getClass());
+        }
+        try {
+            out.writeBytes(body);
+        } finally {
+            body.release();
+        }
+    }
+
     /**
      * Decodes the message
+     * <p>
+     * The buffer is a slice of the network buffer that is only valid while this method is running, codec that need
+     * to keep the bytes afterwards must retain or copy them
      *
      * @param buffer the buffer where the message's bytes are stored
      * @return the message decoded from the buffer
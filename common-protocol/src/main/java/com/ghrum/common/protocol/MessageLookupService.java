@@ -19,23 +19,43 @@ package com.ghrum.common.protocol;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
+import io.netty.util.concurrent.DefaultThreadFactory;
 
 import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 import java.util.function.BiConsumer;
 
 /**
  * Define the service for {@link MessageCodec} and {@link Message}
  */
 public final class MessageLookupService {
-    private final Map<Class<? extends Message>, BiConsumer<Connection, ?>> handlerTable;
     private final Map<Class<? extends Message>, MessageCodec<?>> classTable;
     private final MessageCodec<?>[] opcodeTable;
+    private final MessageCodec<?>[][] stateTable;
+    private final BiConsumer<Connection, ?>[] handlerTable;
+    private final boolean[] blockingTable;
+    private final ClassValue<MessageCodec<?>> codecTable = new ClassValue<MessageCodec<?>>() {
+        @Override
+        protected MessageCodec<?> computeValue(Class<?> type) {
+            return classTable.get(type);
+        }
+    };
+    private final ProtocolMetrics metrics;
+    private volatile boolean isFrozen = false;
+    private volatile boolean isCompressionEnabled = false;
+    private final Set<FrameFormat> frameFormats = EnumSet.of(FrameFormat.FIXED);
+    private volatile int maxBodyLength = FrameFormat.FIXED.getMaxBodyLength();
+    private volatile Executor blockingExecutor;
 
     /**
      * Default constructor for {@link MessageLookupService}
@@ -44,8 +64,20 @@ public final class MessageLookupService {
      */
     public MessageLookupService(int size) {
         this.classTable = new HashMap<>(size);
-        this.handlerTable = new HashMap<>(size);
         this.opcodeTable = new MessageCodec<?>[size];
+        this.stateTable = new MessageCodec<?>[Connection.State.values().length][size];
+        this.handlerTable = newHandlerTable(size);
+        this.blockingTable = new boolean[size];
+        this.metrics = new ProtocolMetrics(size, this::getCodec);
+    }
+
+    /**
+     * Gets the {@link ProtocolMetrics} of the service
+     *
+     * @return the metrics of the service
+     */
+    public ProtocolMetrics getMetrics() {
+        return metrics;
     }
 
     /**
@@ -84,18 +116,239 @@ public final class MessageLookupService {
      * @param <J>   the class type of the codec
      */
     protected <T extends Message, J extends MessageCodec<T>> void register(J codec) {
+        checkNotFrozen();
+        if (codec.getOpcode() < 0 || codec.getOpcode() >= opcodeTable.length) {
+            throw new IllegalArgumentException("Opcode " + codec.getOpcode() + " is out of bounds");
+        }
+        if (codec.getOpcode() == FrameFormat.CONTROL_OPCODE && isFrameFormatNegotiable()) {
+            throw new IllegalArgumentException("Opcode " + codec.getOpcode() + " is reserved for control frames");
+        }
         opcodeTable[codec.getOpcode()] = codec;
+        for (Connection.State state : Connection.State.values()) {
+            stateTable[state.ordinal()][codec.getOpcode()] = (codec.isAllowed(state) ? codec : null);
+        }
         classTable.put(codec.getType(), codec);
+        codecTable.remove(codec.getType());
+        if (codec.getCompressionThreshold() != MessageCodec.NO_COMPRESSION) {
+            isCompressionEnabled = true;
+        }
+    }
+
+    /**
+     * Bind every {@link MessageCodec} of a {@link CodecRegistry} to the service table
+     *
+     * @param registry the registry that contains the codecs
+     */
+    public void install(CodecRegistry registry) {
+        for (MessageCodec<?> codec : registry.getCodecs()) {
+            if (getCodec(codec.getOpcode()) != null) {
+                throw new IllegalStateException("Trying to bind a codec in a position where is already taken");
+            }
+            register(codec);
+        }
     }
 
     /**
      * Bind a {@link BiConsumer} to the service table
+     * <p>
+     * The handler is stored next to the codec of the message, so the codec must be registered first
      *
      * @param clazz   the class type of the message
      * @param handler the handler for the given message
      */
     protected <T extends Message> void register(Class<T> clazz, BiConsumer<Connection, T> handler) {
-        handlerTable.put(clazz, handler);
+        register(clazz, handler, false);
+    }
+
+    /**
+     * Bind a {@link BiConsumer} to the service table
+     * <p>
+     * A blocking handler (for example one that queries a database) doesn't run on the pulse, it runs on the
+     * {@link #getBlockingExecutor()} instead. Every connection runs a single blocking handler at a time, and the
+     * messages it receives meanwhile wait until the handler has finished, so messages are still handled in order
+     *
+     * @param clazz      the class type of the message
+     * @param handler    the handler for the given message
+     * @param isBlocking true if the handler blocks
+     */
+    protected <T extends Message> void register(Class<T> clazz, BiConsumer<Connection, T> handler,
+                                                boolean isBlocking) {
+        checkNotFrozen();
+        final MessageCodec<?> codec = classTable.get(clazz);
+        if (codec == null) {
+            throw new IllegalStateException("Trying to register a handler for a message without codec: " + clazz);
+        }
+        handlerTable[codec.getOpcode()] = handler;
+        blockingTable[codec.getOpcode()] = isBlocking;
+    }
+
+    /**
+     * Gets if the handler of a {@link Message} blocks
+     *
+     * @param opcode the unique opcode of the message
+     * @return true if the handler of the message blocks
+     */
+    public boolean isBlocking(int opcode) {
+        return (opcode >= 0 && opcode < blockingTable.length && blockingTable[opcode]);
+    }
+
+    /**
+     * Gets the {@link Executor} of the blocking handlers
+     * <p>
+     * Unless another executor was set, every handler runs on its own virtual thread when the runtime supports them,
+     * or on a cached pool of daemon threads otherwise
+     *
+     * @return the executor of the blocking handlers
+     */
+    public Executor getBlockingExecutor() {
+        Executor executor = blockingExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                executor = blockingExecutor;
+                if (executor == null) {
+                    blockingExecutor = executor = newBlockingExecutor();
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * Sets the {@link Executor} of the blocking handlers
+     *
+     * @param executor the executor of the blocking handlers
+     */
+    public void setBlockingExecutor(Executor executor) {
+        checkNotFrozen();
+        if (executor == null) {
+            throw new IllegalArgumentException("Trying to set a null executor");
+        }
+        this.blockingExecutor = executor;
+    }
+
+    /**
+     * Ends the registration of the service
+     * <p>
+     * Once frozen the tables of the service never change, so every lookup is a plain read of a stable array
+     */
+    public void freeze() {
+        isFrozen = true;
+    }
+
+    /**
+     * Gets if the registration of the service has ended
+     *
+     * @return true if no more codec or handler can be registered
+     */
+    public boolean isFrozen() {
+        return isFrozen;
+    }
+
+    /**
+     * Gets the max number of {@link MessageCodec} of the service
+     *
+     * @return the max number of codec allowed to register
+     */
+    public int getCapacity() {
+        return opcodeTable.length;
+    }
+
+    /**
+     * Gets the limit of the received messages with the given opcode
+     *
+     * @param opcode the unique opcode of the message
+     * @param state  the state of the connection
+     * @return the limit of the received messages, or null if they're unlimited
+     */
+    public RateLimit getRateLimit(int opcode, Connection.State state) {
+        final MessageCodec<?> codec = (opcode >= 0 && opcode < opcodeTable.length ? opcodeTable[opcode] : null);
+        return (codec != null ? codec.getRateLimit(state) : null);
+    }
+
+    /**
+     * Gets if any {@link MessageCodec} of the service compresses its messages
+     * <p>
+     * Messages are only compressed once their connection switched to a {@link FrameFormat} that supports compression,
+     * so compression also requires such a format to be enabled
+     *
+     * @return true if any message can be compressed
+     */
+    public boolean isCompressionEnabled() {
+        return isCompressionEnabled && isFrameFormatEnabled(FrameFormat.VARINT);
+    }
+
+    /**
+     * Enables a {@link FrameFormat} that connections of the service may switch to
+     * <p>
+     * Every service starts with {@link FrameFormat#FIXED} only, where every opcode keeps its legacy meaning. Once any
+     * other format is enabled {@link FrameFormat#CONTROL_OPCODE} is reserved for the control frames that switch
+     * between them
+     *
+     * @param format the format to enable
+     */
+    public void enableFrameFormat(FrameFormat format) {
+        checkNotFrozen();
+        if (format != FrameFormat.FIXED && FrameFormat.CONTROL_OPCODE < opcodeTable.length
+                && opcodeTable[FrameFormat.CONTROL_OPCODE] != null) {
+            throw new IllegalStateException("Opcode " + FrameFormat.CONTROL_OPCODE + " is reserved for control"
+                    + " frames, but it's already taken");
+        }
+        frameFormats.add(format);
+    }
+
+    /**
+     * Gets if connections of the service may switch to a {@link FrameFormat}
+     *
+     * @param format the format of the frames
+     * @return true if the format is enabled
+     */
+    public boolean isFrameFormatEnabled(FrameFormat format) {
+        return frameFormats.contains(format);
+    }
+
+    /**
+     * Gets if connections of the service may switch to any {@link FrameFormat} other than
+     * {@link FrameFormat#FIXED}, in which case {@link FrameFormat#CONTROL_OPCODE} is reserved for control frames
+     *
+     * @return true if any other format is enabled
+     */
+    public boolean isFrameFormatNegotiable() {
+        return frameFormats.size() > 1;
+    }
+
+    /**
+     * Sets the max length of the body of the messages sent or received by connections of the service
+     * <p>
+     * The limit never goes over the max length of the {@link FrameFormat} of the frames, so it only grows the bodies
+     * of the formats whose header can carry longer ones
+     *
+     * @param length the max length of the body of a message
+     */
+    public void setMaxBodyLength(int length) {
+        checkNotFrozen();
+        if (length <= 0) {
+            throw new IllegalArgumentException("Trying to set a max body length of " + length);
+        }
+        maxBodyLength = length;
+    }
+
+    /**
+     * Gets the max length of the body of the messages sent or received with a {@link FrameFormat}
+     *
+     * @param format the format of the frames
+     * @return the max length of the body of a message
+     */
+    public int getMaxBodyLength(FrameFormat format) {
+        return Math.min(maxBodyLength, format.getMaxBodyLength());
+    }
+
+    /**
+     * Checks that the registration of the service hasn't ended
+     */
+    private void checkNotFrozen() {
+        if (isFrozen) {
+            throw new IllegalStateException("Cannot register into a frozen service");
+        }
     }
 
     /**
@@ -116,25 +369,111 @@ public final class MessageLookupService {
      */
     @SuppressWarnings("unchecked")
     public <T extends Message> BiConsumer<Connection, T> getHandler(Class<T> clazz) {
-        return (BiConsumer<Connection, T>) handlerTable.get(clazz);
+        final MessageCodec<?> codec = codecTable.get(clazz);
+        return (codec != null ? (BiConsumer<Connection, T>) handlerTable[codec.getOpcode()] : null);
     }
 
     /**
-     * Encodes a {@link Message} into a stream
+     * Gets a {@link BiConsumer} from the service given the {@link Message}'s opcode
+     *
+     * @param opcode the unique opcode of the message
+     * @return the handler if the opcode is valid and has a handler, null otherwise
+     */
+    public BiConsumer<Connection, ?> getHandler(int opcode) {
+        return (opcode >= 0 && opcode < handlerTable.length ? handlerTable[opcode] : null);
+    }
+
+    /**
+     * Encodes a {@link Message} into a stream with {@link FrameFormat#FIXED}
      *
      * @param message the message to encode to the buffer
-     * @return a wrapped buffer that contains the header and the body of the message
+     * @return a buffer that contains the header and the body of the message
      * @throws java.io.IOException
      */
-    @SuppressWarnings("unchecked")
     protected <T extends Message> ByteBuf encode(T message) throws IOException {
+        final ByteBuf buffer = Unpooled.buffer();
+        try {
+            encode(message, buffer);
+        } catch (IOException ex) {
+            buffer.release();
+            throw ex;
+        }
+        return buffer;
+    }
+
+    /**
+     * Encodes a {@link Message} into the given stream with {@link FrameFormat#FIXED}
+     *
+     * @param message the message to encode to the buffer
+     * @param out     the buffer where the header and the body of the message are written
+     * @throws java.io.IOException
+     */
+    protected <T extends Message> void encode(T message, ByteBuf out) throws IOException {
+        encode(message, out, FrameFormat.FIXED);
+    }
+
+    /**
+     * Encodes a {@link Message} into the given stream
+     * <p>
+     * The header is reserved before the body is encoded in place by the codec, then the length of the body is
+     * written back into the header. An {@link EncodedMessage} in another format has its header rewritten
+     *
+     * @param message the message to encode to the buffer
+     * @param out     the buffer where the header and the body of the message are written
+     * @param format  the format of the header
+     * @throws java.io.IOException
+     */
+    @SuppressWarnings("unchecked")
+    protected <T extends Message> void encode(T message, ByteBuf out, FrameFormat format) throws IOException {
+        if (message instanceof EncodedMessage) {
+            encode((EncodedMessage) message, out, format);
+            return;
+        }
         final MessageCodec<Message> codec = (MessageCodec<Message>) getCodec(message.getClass());
         if (codec == null) {
             throw new IOException("Unknown operation class: " + message.getClass());
         }
-        final ByteBuf body = codec.encode(message);
-        final ByteBuf header = Unpooled.buffer(3).writeByte(codec.getOpcode()).writeShort(body.capacity());
-        return Unpooled.wrappedBuffer(header, body);
+        if (codec.getOpcode() > format.getMaxOpcode()) {
+            throw new IOException("Opcode " + codec.getOpcode() + " is out of bounds for " + format);
+        }
+        final int headerIndex = out.writerIndex();
+        format.writeHeader(out, codec.getOpcode(), false, 0);
+        final int bodyIndex = out.writerIndex();
+        codec.encode(message, out);
+
+        final int length = out.writerIndex() - bodyIndex;
+        if (length > getMaxBodyLength(format)) {
+            out.writerIndex(headerIndex);
+            throw new IOException("Message body is too large: " + length);
+        }
+        format.setBodyLength(out, headerIndex, bodyIndex);
+    }
+
+    /**
+     * Encodes an {@link EncodedMessage} into the given stream
+     *
+     * @param message the message to encode to the buffer
+     * @param out     the buffer where the header and the body of the message are written
+     * @param format  the format of the header
+     * @throws java.io.IOException
+     */
+    private void encode(EncodedMessage message, ByteBuf out, FrameFormat format) throws IOException {
+        final ByteBuf frame = message.content();
+        final FrameFormat source = message.getFrameFormat();
+        if (source == format) {
+            out.writeBytes(frame, frame.readerIndex(), frame.readableBytes());
+            return;
+        }
+        final int index = frame.readerIndex();
+        final int opcode = source.getOpcode(frame, index);
+        final int length = source.getBodyLength(frame, index);
+        final boolean isCompressed = source.isCompressed(frame, index);
+        if (opcode > format.getMaxOpcode() || length > getMaxBodyLength(format)
+                || (isCompressed && !format.isCompressionSupported())) {
+            throw new IOException("Frame of opcode " + opcode + " doesn't fit in " + format);
+        }
+        format.writeHeader(out, opcode, isCompressed, length);
+        out.writeBytes(frame, frame.writerIndex() - length, length);
     }
 
     /**
@@ -146,7 +485,7 @@ public final class MessageLookupService {
      */
     @SuppressWarnings("unchecked")
     public <T extends Message> MessageCodec<T> getCodec(Class<T> clazz) {
-        return (MessageCodec<T>) classTable.get(clazz);
+        return (MessageCodec<T>) codecTable.get(clazz);
     }
 
     /**
@@ -173,9 +512,55 @@ public final class MessageLookupService {
      * @return the codec if the opcode is valid, null otherwise
      */
     public MessageCodec<?> getCodec(int opcode) {
-        if (opcode < 0 || opcode > opcodeTable.length) {
+        if (opcode < 0 || opcode >= opcodeTable.length) {
             throw new IllegalArgumentException("Opcode " + opcode + " is out of bounds");
         }
         return opcodeTable[opcode];
     }
+
+    /**
+     * Gets a {@link MessageCodec} from the service given its opcode and the state of the connection
+     *
+     * @param opcode the unique opcode of the message
+     * @param state  the state of the connection
+     * @return the codec if the opcode is valid and allowed in the given state, null otherwise
+     */
+    public MessageCodec<?> getCodec(int opcode, Connection.State state) {
+        final MessageCodec<?>[] table = stateTable[state.ordinal()];
+        return (opcode >= 0 && opcode < table.length ? table[opcode] : null);
+    }
+
+    /**
+     * Gets the table of every {@link MessageCodec} allowed in a state, by opcode
+     * <p>
+     * The table is shared and must not be modified
+     *
+     * @param state the state of the connection
+     * @return the table of the codecs allowed in the given state
+     */
+    MessageCodec<?>[] getCodecTable(Connection.State state) {
+        return stateTable[state.ordinal()];
+    }
+
+    /**
+     * Creates the default executor of the blocking handlers
+     */
+    private static Executor newBlockingExecutor() {
+        try {
+            // Virtual threads are looked up at runtime, since the
+            // protocol still targets runtimes without them
+            final Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (Executor) factory.invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            return Executors.newCachedThreadPool(new DefaultThreadFactory("Protocol-Blocking", true));
+        }
+    }
+
+    /**
+     * Creates the handler table of the service
+     */
+    @SuppressWarnings("unchecked")
+    private static BiConsumer<Connection, ?>[] newHandlerTable(int size) {
+        return (BiConsumer<Connection, ?>[]) new BiConsumer<?, ?>[size];
+    }
 }
@@ -0,0 +1,61 @@
+/**
+ * This file is part of Argentum Online.
+ *
+ * Copyright (c) 2014 Argentum Online <https://github.com/orgs/Argentum-Online/members>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghrum.common.protocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.DefaultByteBufHolder;
+
+import java.io.IOException;
+
+/**
+ * Define a {@link Message} that reads its fields on demand from the body of the received frame
+ * <p>
+ * The view retains the body of the frame instead of decoding it, so handlers only pay for the fields they read.
+ * Fields are read with absolute offsets from the start of the body (for example {@code content().getInt(4)}),
+ * and the view is released once handled like any other reference-counted message. Handlers that keep the view or
+ * forward it to other connections must {@link #retain()} it, and a forwarded view is sent with its original bytes
+ * without being encoded again
+ */
+public abstract class MessageView extends DefaultByteBufHolder implements Message {
+    /**
+     * Default constructor for {@link MessageView}
+     *
+     * @param body the buffer that contains the body of the message
+     */
+    public MessageView(ByteBuf body) {
+        super(body);
+    }
+
+    /**
+     * Reads a string written by {@link CodecSupport#writeString(ByteBuf, String)}
+     *
+     * @param index the offset of the string from the start of the body
+     * @return the string read
+     * @throws IOException if the string is malformed
+     */
+    protected final String getString(int index) throws IOException {
+        final ByteBuf body = content();
+        final int readerIndex = body.readerIndex();
+        try {
+            body.readerIndex(readerIndex + index);
+            return CodecSupport.readString(body);
+        } finally {
+            body.readerIndex(readerIndex);
+        }
+    }
+}
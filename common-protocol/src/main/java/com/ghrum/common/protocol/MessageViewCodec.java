@@ -0,0 +1,74 @@
+/**
+ * This file is part of Argentum Online.
+ *
+ * Copyright (c) 2014 Argentum Online <https://github.com/orgs/Argentum-Online/members>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghrum.common.protocol;
+
+import io.netty.buffer.ByteBuf;
+
+import java.io.IOException;
+
+/**
+ * Represent the codec for a type of {@link MessageView}
+ * <p>
+ * Decoding only wraps the received body in a view, and encoding writes the body of the view as it is
+ *
+ * @param <T> the type of the message
+ */
+public abstract class MessageViewCodec<T extends MessageView> extends MessageCodec<T> {
+    /**
+     * Default constructor for {@link MessageViewCodec}
+     *
+     * @param clazz  the class type for the message
+     * @param opcode the unique identifier of the message
+     * @param state  the state of the message
+     */
+    public MessageViewCodec(Class<T> clazz, int opcode, Connection.State state) {
+        super(clazz, opcode, state);
+    }
+
+    /**
+     * Creates a view over the body of a message
+     *
+     * @param body the buffer that contains the body of the message, owned by the view
+     * @return the view over the body
+     * @throws IOException if the body is malformed
+     */
+    protected abstract T newView(ByteBuf body) throws IOException;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final void encode(T message, ByteBuf out) throws IOException {
+        final ByteBuf body = message.content();
+        out.writeBytes(body, body.readerIndex(), body.readableBytes());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final T decode(ByteBuf buffer) throws IOException {
+        buffer.retain();
+        try {
+            return newView(buffer);
+        } catch (IOException | RuntimeException ex) {
+            buffer.release();
+            throw ex;
+        }
+    }
+}
@@ -0,0 +1,383 @@
+/**
+ * This file is part of Argentum Online.
+ *
+ * Copyright (c) 2014 Argentum Online <https://github.com/orgs/Argentum-Online/members>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghrum.common.protocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelPromise;
+import io.netty.util.AttributeKey;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Define a link between two nodes that multiplexes many sessions over a single channel
+ * <p>
+ * Every session is a {@link LinkChannel}, a child of the channel of the link, so a {@link CommonConnection} works on
+ * top of it the same as on a socket: a world node that accepts sessions with a {@link ProtocolChannelInitializer}
+ * sees every player of a gateway as a regular connection, although they all share one TCP connection.
+ * <p>
+ * Every frame of the link is made of a 3-byte length of the rest of the frame, a {@link Type} and a varint session id
+ * followed by its payload. Sessions write to the link without flushing it, and the link is flushed once every session
+ * that wrote in the same task of the event loop has written, so the writes of many sessions are batched together.
+ * <p>
+ * Every session has a window of bytes that its peer may send before being granted more with a {@link Type#CREDIT}
+ * frame, and the window is granted back as the bytes are read by the pipeline of the session, so a session whose
+ * reads are paused stops its peer without stopping the rest of the link
+ */
+public final class NodeLink {
+    /**
+     * The key of the attribute of the channel that references its link
+     */
+    public static final AttributeKey<NodeLink> LINK_KEY = AttributeKey.valueOf("NodeLink");
+    /**
+     * The length of the length field of every frame
+     */
+    public static final int LENGTH_FIELD_LENGTH = 3;
+    /**
+     * The max length of a frame, after the length field
+     */
+    public static final int MAX_FRAME_LENGTH = 0xFFFFFF;
+    /**
+     * The max length of the payload of a {@link Type#DATA} frame, so the writes of a session are interleaved with the
+     * writes of the others
+     */
+    public static final int MAX_DATA_LENGTH = 16 * 1024;
+    /**
+     * The default number of bytes every session may receive before granting more
+     */
+    public static final int DEFAULT_WINDOW = 64 * 1024;
+
+    private final Channel channel;
+    private final ChannelHandler handler;
+    private final int window;
+    private final Map<Integer, LinkChannel> sessions = new HashMap<>();
+    private final AtomicInteger nextSession;
+    private final AtomicBoolean isFlushScheduled = new AtomicBoolean();
+
+    /**
+     * Default constructor for {@link NodeLink}
+     *
+     * @param channel     the channel of the link
+     * @param isInitiator true if this node connected the channel, false if it accepted it
+     * @param handler     the handler of the sessions opened by the peer, or null to refuse them
+     * @param window      the number of bytes every session may receive before granting more
+     */
+    private NodeLink(Channel channel, boolean isInitiator, ChannelHandler handler, int window) {
+        this.channel = channel;
+        this.handler = handler;
+        this.window = window;
+        // Each side allocates ids of its own parity, so both sides
+        // can open sessions at the same time without a collision
+        this.nextSession = new AtomicInteger(isInitiator ? 1 : 2);
+    }
+
+    /**
+     * Attaches a link to a channel, usually from a {@link io.netty.channel.ChannelInitializer}
+     *
+     * @param channel     the channel of the link
+     * @param isInitiator true if this node connected the channel, false if it accepted it
+     * @param handler     the handler of the sessions opened by the peer, or null to refuse them
+     * @return the link attached to the channel
+     */
+    public static NodeLink attach(Channel channel, boolean isInitiator, ChannelHandler handler) {
+        return attach(channel, isInitiator, handler, DEFAULT_WINDOW);
+    }
+
+    /**
+     * Attaches a link to a channel, usually from a {@link io.netty.channel.ChannelInitializer}
+     *
+     * @param channel     the channel of the link
+     * @param isInitiator true if this node connected the channel, false if it accepted it
+     * @param handler     the handler of the sessions opened by the peer, or null to refuse them
+     * @param window      the number of bytes every session may receive before granting more
+     * @return the link attached to the channel
+     */
+    public static NodeLink attach(Channel channel, boolean isInitiator, ChannelHandler handler, int window) {
+        if (window <= 0) {
+            throw new IllegalArgumentException("Window " + window + " is out of bounds");
+        }
+        final NodeLink link = new NodeLink(channel, isInitiator, handler, window);
+        channel.attr(LINK_KEY).set(link);
+        channel.pipeline().addLast(new NodeLinkDecoder(link));
+        return link;
+    }
+
+    /**
+     * Opens a new session on the link
+     * <p>
+     * The session may be written to right away, but its bytes are held until the peer grants the window of the
+     * session
+     *
+     * @param address the address of the remote end of the session, such as the address of a player
+     * @param handler the handler of the session
+     * @return the future notified once the session was registered
+     */
+    public ChannelFuture open(InetSocketAddress address, ChannelHandler handler) {
+        if (address.isUnresolved()) {
+            throw new IllegalArgumentException("Trying to open a session with an unresolved address: " + address);
+        }
+        final LinkChannel session = new LinkChannel(this, nextSession.getAndAdd(2), address, false, 0);
+        session.pipeline().addLast(handler);
+        final ChannelPromise promise = session.newPromise();
+        session.unsafe().register(promise);
+        return promise;
+    }
+
+    /**
+     * Gets the channel of the link
+     *
+     * @return the channel of the link
+     */
+    public Channel getChannel() {
+        return channel;
+    }
+
+    /**
+     * Gets the number of bytes every session may receive before granting more
+     *
+     * @return the window of every session in bytes
+     */
+    public int getWindow() {
+        return window;
+    }
+
+    /**
+     * Gets the number of open sessions
+     * <p>
+     * Must be called from the event loop of the link
+     *
+     * @return the number of open sessions
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Adds a session to the link, and announces it to the peer unless the peer opened it
+     *
+     * @param session the session to add
+     */
+    void register(LinkChannel session) {
+        sessions.put(session.getSession(), session);
+        if (!session.isAccepted()) {
+            final InetSocketAddress address = session.remoteAddress();
+            final byte[] bytes = address.getAddress().getAddress();
+            final ByteBuf frame = newFrame(Type.OPEN, session.getSession(), 1 + bytes.length + 2 + 5);
+            frame.writeByte(bytes.length).writeBytes(bytes).writeShort(address.getPort());
+            CodecSupport.writeVarInt(frame, window);
+            write(frame);
+        }
+    }
+
+    /**
+     * Removes a session from the link, and announces it to the peer unless the peer closed it
+     *
+     * @param session  the session to remove
+     * @param isRemote true if the peer closed the session
+     */
+    void unregister(LinkChannel session, boolean isRemote) {
+        if (sessions.remove(session.getSession(), session) && !isRemote && channel.isActive()) {
+            write(newFrame(Type.CLOSE, session.getSession(), 0));
+        }
+    }
+
+    /**
+     * Writes a chunk of the bytes of a session
+     *
+     * @param session the session id
+     * @param payload the bytes of the session, released once written
+     */
+    void writeData(int session, ByteBuf payload) {
+        final ByteBuf frame = newFrame(Type.DATA, session, 0);
+        frame.setMedium(0, frame.readableBytes() - LENGTH_FIELD_LENGTH + payload.readableBytes());
+        channel.write(frame);
+        channel.write(payload);
+        scheduleFlush();
+    }
+
+    /**
+     * Grants more bytes to the peer of a session
+     *
+     * @param session the session id
+     * @param credit  the number of bytes granted
+     */
+    void writeCredit(int session, int credit) {
+        final ByteBuf frame = newFrame(Type.CREDIT, session, 5);
+        CodecSupport.writeVarInt(frame, credit);
+        write(frame);
+    }
+
+    /**
+     * Handle a frame of the link
+     * <p>
+     * The payload of a {@link Type#DATA} frame is copied before it's handed to its session, since the payload is a
+     * slice of the cumulation buffer of the decoder, which is compacted once it's read
+     *
+     * @param type    the type of the frame
+     * @param id      the session id of the frame
+     * @param payload the payload of the frame, only valid during the call
+     * @throws IOException if the frame is malformed
+     */
+    void frameReceived(Type type, int id, ByteBuf payload) throws IOException {
+        final LinkChannel session = sessions.get(id);
+        switch (type) {
+            case OPEN:
+                accept(id, payload);
+                break;
+            case DATA:
+                if (session != null) {
+                    session.dataReceived(channel.alloc().ioBuffer(payload.readableBytes()).writeBytes(payload));
+                }
+                break;
+            case CREDIT:
+                if (session != null) {
+                    session.creditReceived(CodecSupport.readVarInt(payload));
+                }
+                break;
+            case CLOSE:
+                if (session != null) {
+                    session.closeReceived();
+                }
+                break;
+        }
+    }
+
+    /**
+     * Handle the closure of the link by closing every session
+     */
+    void linkClosed() {
+        for (LinkChannel session : new ArrayList<>(sessions.values())) {
+            session.close();
+        }
+    }
+
+    /**
+     * Handle a change of the writability of the link by notifying every session
+     */
+    void linkWritabilityChanged() {
+        for (LinkChannel session : new ArrayList<>(sessions.values())) {
+            session.pipeline().fireChannelWritabilityChanged();
+        }
+    }
+
+    /**
+     * Accepts a session opened by the peer, or refuses it when there is no handler
+     */
+    private void accept(int id, ByteBuf payload) throws IOException {
+        final byte[] bytes = new byte[payload.readUnsignedByte()];
+        payload.readBytes(bytes);
+        final InetSocketAddress address = new InetSocketAddress(InetAddress.getByAddress(bytes),
+                payload.readUnsignedShort());
+        final int credit = CodecSupport.readVarInt(payload);
+
+        if (handler == null || sessions.containsKey(id)) {
+            write(newFrame(Type.CLOSE, id, 0));
+            return;
+        }
+        final LinkChannel session = new LinkChannel(this, id, address, true, credit);
+        session.pipeline().addLast(handler);
+        session.unsafe().register(session.newPromise());
+        writeCredit(id, window);
+    }
+
+    /**
+     * Allocates a frame and writes its header, except for its length
+     *
+     * @param type     the type of the frame
+     * @param session  the session id
+     * @param capacity the expected length of the payload
+     * @return the frame, positioned at the start of its payload
+     */
+    private ByteBuf newFrame(Type type, int session, int capacity) {
+        final ByteBuf frame = channel.alloc().ioBuffer(LENGTH_FIELD_LENGTH + 1 + 5 + capacity);
+        frame.writeMedium(0).writeByte(type.ordinal());
+        CodecSupport.writeVarInt(frame, session);
+        return frame;
+    }
+
+    /**
+     * Sets the length of a frame that carries its whole payload, and writes it
+     *
+     * @param frame the frame to write
+     */
+    private void write(ByteBuf frame) {
+        frame.setMedium(0, frame.readableBytes() - LENGTH_FIELD_LENGTH);
+        channel.write(frame);
+        scheduleFlush();
+    }
+
+    /**
+     * Schedules a flush of the link on its event loop
+     * <p>
+     * Every session that writes before the flush runs is flushed together
+     */
+    private void scheduleFlush() {
+        if (isFlushScheduled.compareAndSet(false, true)) {
+            channel.eventLoop().execute(() -> {
+                isFlushScheduled.set(false);
+                channel.flush();
+            });
+        }
+    }
+
+    /**
+     * Define all possible types of frame of {@link NodeLink}
+     */
+    public enum Type {
+        /**
+         * A new session, carrying the address of its remote end and the window it grants to the peer.
+         */
+        OPEN,
+
+        /**
+         * A chunk of the bytes of a session.
+         */
+        DATA,
+
+        /**
+         * A grant of more bytes to the peer of a session.
+         */
+        CREDIT,
+
+        /**
+         * The end of a session.
+         */
+        CLOSE;
+
+        private static final Type[] VALUES = values();
+
+        /**
+         * Gets the type given its value on the wire
+         *
+         * @param value the value of the type
+         * @return the type or null if the value is unknown
+         */
+        public static Type valueOf(int value) {
+            return (value >= 0 && value < VALUES.length ? VALUES[value] : null);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * This file is part of Argentum Online.
+ *
+ * Copyright (c) 2014 Argentum Online <https://github.com/orgs/Argentum-Online/members>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghrum.common.protocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Define the {@link ByteToMessageDecoder} of the frames of a {@link NodeLink}
+ * <p>
+ * Every complete frame is handed to the link as a slice of the cumulation buffer, and the channel is closed on the
+ * first malformed frame since the sessions of the link can't be told apart after it
+ */
+final class NodeLinkDecoder extends ByteToMessageDecoder {
+    private final NodeLink link;
+
+    /**
+     * Default constructor for {@link NodeLinkDecoder}
+     *
+     * @param link the link of the decoder
+     */
+    NodeLinkDecoder(NodeLink link) {
+        this.link = link;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+        while (in.readableBytes() >= NodeLink.LENGTH_FIELD_LENGTH) {
+            final int index = in.readerIndex();
+            final int length = in.getUnsignedMedium(index);
+            if (in.readableBytes() < NodeLink.LENGTH_FIELD_LENGTH + length) {
+                return;
+            }
+            final ByteBuf frame = in.slice(index + NodeLink.LENGTH_FIELD_LENGTH, length);
+            in.skipBytes(NodeLink.LENGTH_FIELD_LENGTH + length);
+
+            final NodeLink.Type type = (frame.isReadable() ? NodeLink.Type.valueOf(frame.readUnsignedByte()) : null);
+            try {
+                if (type == null) {
+                    throw new IOException("Malformed frame of a node link");
+                }
+                final int session = CodecSupport.readVarInt(frame);
+                link.frameReceived(type, session, frame);
+            } catch (IOException | IndexOutOfBoundsException ex) {
+                // <TODO: Wolftein Use some common logger>
+                in.skipBytes(in.readableBytes());
+                ctx.close();
+                return;
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        link.linkClosed();
+        super.channelInactive(ctx);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        link.linkWritabilityChanged();
+        super.channelWritabilityChanged(ctx);
+    }
+}
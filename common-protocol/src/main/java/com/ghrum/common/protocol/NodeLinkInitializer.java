@@ -0,0 +1,65 @@
+/**
+ * This file is part of Argentum Online.
+ *
+ * Copyright (c) 2014 Argentum Online <https://github.com/orgs/Argentum-Online/members>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghrum.common.protocol;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelInitializer;
+
+/**
+ * Define the {@link ChannelInitializer} of the channels of a {@link NodeLink}
+ * <p>
+ * A world node accepts links with the {@link ProtocolChannelInitializer} of its connections as the handler of the
+ * sessions, and a gateway connects links without any handler since it only opens sessions
+ */
+public class NodeLinkInitializer extends ChannelInitializer<Channel> {
+    private final boolean isInitiator;
+    private final ChannelHandler handler;
+    private final int window;
+
+    /**
+     * Default constructor for {@link NodeLinkInitializer}
+     *
+     * @param isInitiator true if this node connects the channels, false if it accepts them
+     * @param handler     the handler of the sessions opened by the peer, or null to refuse them
+     */
+    public NodeLinkInitializer(boolean isInitiator, ChannelHandler handler) {
+        this(isInitiator, handler, NodeLink.DEFAULT_WINDOW);
+    }
+
+    /**
+     * Constructor for {@link NodeLinkInitializer} with the window of every session
+     *
+     * @param isInitiator true if this node connects the channels, false if it accepts them
+     * @param handler     the handler of the sessions opened by the peer, or null to refuse them
+     * @param window      the number of bytes every session may receive before granting more
+     */
+    public NodeLinkInitializer(boolean isInitiator, ChannelHandler handler, int window) {
+        this.isInitiator = isInitiator;
+        this.handler = handler;
+        this.window = window;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void initChannel(Channel ch) throws Exception {
+        NodeLink.attach(ch, isInitiator, handler, window);
+    }
+}
@@ -0,0 +1,73 @@
+/**
+ * This file is part of Argentum Online.
+ *
+ * Copyright (c) 2014 Argentum Online <https://github.com/orgs/Argentum-Online/members>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghrum.common.protocol;
+
+import io.netty.util.AbstractReferenceCounted;
+
+/**
+ * Define a {@link Message} whose instances are recycled by its {@link PooledMessageCodec}
+ * <p>
+ * A decoded message is handed to its handler with a reference count of one, and it's released as soon as the handler
+ * returns, which gives the instance back to the pool of the thread that decoded it. Handlers that need the message
+ * afterwards (for example to queue or forward it) must {@link #retain()} it and release it once they're done.
+ * <p>
+ * Unlike other messages, the fields of a pooled message are written by its codec every time the instance is reused,
+ * so they cannot be final
+ */
+public abstract class PooledMessage extends AbstractReferenceCounted implements Message {
+    /**
+     * The pool where the message returns once released, or null if the message is not pooled
+     */
+    private BoundedMessageQueue<PooledMessage> pool;
+
+    /**
+     * Sets the pool of the message
+     *
+     * @param pool the pool where the message returns once released
+     */
+    final void setPool(BoundedMessageQueue<PooledMessage> pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Acquires the message after being taken from its pool
+     */
+    final void acquire() {
+        setRefCnt(1);
+    }
+
+    /**
+     * Clears the message before returning it to its pool
+     * <p>
+     * Messages that reference other objects should override this method and drop them, so they don't stay reachable
+     * while the instance is in the pool
+     */
+    protected void clear() {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected final void deallocate() {
+        clear();
+        if (pool != null) {
+            pool.offer(this);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * This file is part of Argentum Online.
+ *
+ * Copyright (c) 2014 Argentum Online <https://github.com/orgs/Argentum-Online/members>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghrum.common.protocol;
+
+import io.netty.buffer.ByteBuf;
+
+import java.io.IOException;
+
+/**
+ * Represent the codec for a type of {@link PooledMessage}
+ * <p>
+ * Every thread that decodes messages owns a pool of instances, so decoding never contends with other threads. The
+ * pool is a lock-free queue, which allows a message to be released from any thread (for example the pulse thread)
+ * and still return to the pool of the thread that decoded it. Instances are only allocated when the pool is empty,
+ * and released instances are discarded when the pool is full
+ *
+ * @param <T> the type of the message
+ */
+public abstract class PooledMessageCodec<T extends PooledMessage> extends MessageCodec<T> {
+    /**
+     * The default max number of instances pooled by every thread
+     */
+    public static final int DEFAULT_POOL_CAPACITY = 256;
+
+    private final ThreadLocal<BoundedMessageQueue<PooledMessage>> pools;
+
+    /**
+     * Default constructor for {@link PooledMessageCodec}
+     *
+     * @param clazz  the class type for the message
+     * @param opcode the unique identifier of the message
+     * @param state  the state of the message
+     */
+    public PooledMessageCodec(Class<T> clazz, int opcode, Connection.State state) {
+        this(clazz, opcode, state, DEFAULT_POOL_CAPACITY);
+    }
+
+    /**
+     * Constructor for {@link PooledMessageCodec}
+     *
+     * @param clazz    the class type for the message
+     * @param opcode   the unique identifier of the message
+     * @param state    the state of the message
+     * @param capacity the max number of instances pooled by every thread
+     */
+    public PooledMessageCodec(Class<T> clazz, int opcode, Connection.State state, int capacity) {
+        super(clazz, opcode, state);
+        this.pools = ThreadLocal.withInitial(() -> new BoundedMessageQueue<>(capacity));
+    }
+
+    /**
+     * Creates a new instance of the message
+     *
+     * @return a new instance of the message
+     */
+    protected abstract T newMessage();
+
+    /**
+     * Decodes the message into a pooled instance
+     * <p>
+     * The buffer is a slice of the network buffer that is only valid while this method is running. Every field of
+     * the message must be written, since the instance may contain the values of a previous message
+     *
+     * @param buffer  the buffer where the message's bytes are stored
+     * @param message the instance where the message is decoded
+     * @throws IOException
+     */
+    protected abstract void decode(ByteBuf buffer, T message) throws IOException;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public final T decode(ByteBuf buffer) throws IOException {
+        final BoundedMessageQueue<PooledMessage> pool = pools.get();
+        T message = (T) pool.poll();
+        if (message == null) {
+            message = newMessage();
+            message.setPool(pool);
+        }
+        message.acquire();
+
+        try {
+            decode(buffer, message);
+        } catch (IOException | RuntimeException ex) {
+            message.release();
+            throw ex;
+        }
+        return message;
+    }
+}
@@ -35,4 +35,13 @@ public interface Protocol {
      * @return the message constructed by the protocol
      */
     public Message getKickMessage(String message);
+
+    /**
+     * Gets the {@link Message} sent to idle connections to keep them alive
+     *
+     * @return the message constructed by the protocol, or null if the protocol has no keepalive
+     */
+    public default Message getKeepAliveMessage() {
+        return null;
+    }
 }
@@ -0,0 +1,84 @@
+/**
+ * This file is part of Argentum Online.
+ *
+ * Copyright (c) 2014 Argentum Online <https://github.com/orgs/Argentum-Online/members>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghrum.common.protocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerAdapter;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+
+/**
+ * Define the stage that records the raw traffic of a channel into a {@link TrafficCapture}
+ * <p>
+ * The stage is the first of the pipeline, so it records the bytes exactly as they were received from and sent to the
+ * network, before they're decoded and after they're compressed
+ */
+public class ProtocolCaptureHandler extends ChannelHandlerAdapter {
+    private final TrafficCapture capture;
+    private final long connection;
+
+    /**
+     * Default constructor for {@link ProtocolCaptureHandler}
+     *
+     * @param capture the capture of the channel
+     */
+    protected ProtocolCaptureHandler(TrafficCapture capture) {
+        this.capture = capture;
+        this.connection = capture.newConnection();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        capture.append(TrafficCapture.Type.OPEN, connection, null);
+        super.channelActive(ctx);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        capture.append(TrafficCapture.Type.CLOSE, connection, null);
+        super.channelInactive(ctx);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (msg instanceof ByteBuf) {
+            capture.append(TrafficCapture.Type.INBOUND, connection, (ByteBuf) msg);
+        }
+        super.channelRead(ctx, msg);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (msg instanceof ByteBuf) {
+            capture.append(TrafficCapture.Type.OUTBOUND, connection, (ByteBuf) msg);
+        }
+        super.write(ctx, msg, promise);
+    }
+}
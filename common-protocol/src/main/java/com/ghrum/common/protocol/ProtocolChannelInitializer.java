@@ -17,16 +17,20 @@
  */
 package com.ghrum.common.protocol;
 
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.SimpleChannelInboundHandler;
-import io.netty.channel.socket.SocketChannel;
 
 /**
  * Define a common {@link ChannelInitializer}
+ * <p>
+ * The {@link ProtocolFrameCompressor} stage is only added when any codec of the service compresses its messages, and
+ * the {@link ProtocolCaptureHandler} stage is only added when the initializer was given a {@link TrafficCapture}
  */
-public class ProtocolChannelInitializer extends ChannelInitializer<SocketChannel> {
+public class ProtocolChannelInitializer extends ChannelInitializer<Channel> {
     private final MessageLookupService service;
     private final SimpleChannelInboundHandler<Message> handler;
+    private final TrafficCapture capture;
 
     /**
      * Default constructor for {@link ProtocolChannelInitializer}
@@ -35,17 +39,37 @@ public class ProtocolChannelInitializer extends ChannelInitializer<SocketChannel
      * @param handler the handler of the channel
      */
     public ProtocolChannelInitializer(MessageLookupService service, SimpleChannelInboundHandler<Message> handler) {
+        this(service, handler, null);
+    }
+
+    /**
+     * Constructor for {@link ProtocolChannelInitializer} that records the traffic of every channel
+     *
+     * @param service the service of the channel
+     * @param handler the handler of the channel
+     * @param capture the capture of the traffic of every channel, or null to record nothing
+     */
+    public ProtocolChannelInitializer(MessageLookupService service, SimpleChannelInboundHandler<Message> handler,
+                                      TrafficCapture capture) {
         this.service = service;
         this.handler = handler;
+        this.capture = capture;
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    protected void initChannel(SocketChannel ch) throws Exception {
+    protected void initChannel(Channel ch) throws Exception {
         ProtocolMessageToMessageEncoder encoder = new ProtocolMessageToMessageEncoder(service);
-        ProtocolReplayingDecoder decoder = new ProtocolReplayingDecoder(service);
-        ch.pipeline().addLast(decoder, encoder, handler);
+        ProtocolFrameDecoder decoder = new ProtocolFrameDecoder(service);
+        if (service.isCompressionEnabled()) {
+            ch.pipeline().addLast(decoder, new ProtocolFrameCompressor(service), encoder, handler);
+        } else {
+            ch.pipeline().addLast(decoder, encoder, handler);
+        }
+        if (capture != null) {
+            ch.pipeline().addFirst(new ProtocolCaptureHandler(capture));
+        }
     }
 }
@@ -0,0 +1,211 @@
+/**
+ * This file is part of Argentum Online.
+ *
+ * Copyright (c) 2014 Argentum Online <https://github.com/orgs/Argentum-Online/members>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghrum.common.protocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerAdapter;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+
+import java.util.zip.Deflater;
+
+/**
+ * Define the outbound stage that compresses the body of large frames
+ * <p>
+ * Every outgoing buffer is scanned frame by frame with the {@link FrameFormat} of the channel, and only when a frame
+ * reaches the compression threshold of its codec the buffer is rewritten into a direct buffer where the body of that
+ * frame is deflated and flagged with {@link FrameFormat#COMPRESSED_FLAG}. A compressed body starts with its
+ * uncompressed length as a varint, and every body is compressed on its own. Bodies that don't shrink are left
+ * uncompressed, and so is every frame while the channel writes a format that doesn't support compression
+ */
+public class ProtocolFrameCompressor extends ChannelHandlerAdapter {
+    /**
+     * The length of the chunks where bodies are deflated
+     */
+    private static final int CHUNK_LENGTH = 4096;
+
+    private final MessageLookupService service;
+    private Deflater deflater;
+    private byte[] input;
+    private byte[] chunk;
+
+    /**
+     * Default constructor for {@link ProtocolFrameCompressor}
+     *
+     * @param service the service of the compressor
+     */
+    protected ProtocolFrameCompressor(MessageLookupService service) {
+        this.service = service;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (!(msg instanceof ByteBuf)) {
+            ctx.write(msg, promise);
+            return;
+        }
+        final FrameFormat format = ProtocolMessageToMessageEncoder.getFrameFormat(ctx);
+        final ByteBuf in = (ByteBuf) msg;
+        if (!format.isCompressionSupported() || !isCompressible(format, in)) {
+            ctx.write(msg, promise);
+            return;
+        }
+        final ByteBuf out = ctx.alloc().directBuffer(in.readableBytes());
+        try {
+            compress(format, in, out);
+        } catch (RuntimeException ex) {
+            out.release();
+            throw ex;
+        } finally {
+            in.release();
+        }
+        ctx.write(out, promise);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        if (deflater != null) {
+            deflater.end();
+            deflater = null;
+        }
+        super.handlerRemoved(ctx);
+    }
+
+    /**
+     * Gets if any frame of the buffer must be compressed
+     *
+     * @param format the format of the frames
+     * @param buffer the buffer that contains the frames
+     * @return true if any frame must be compressed
+     */
+    private boolean isCompressible(FrameFormat format, ByteBuf buffer) {
+        final int end = buffer.writerIndex();
+        int index = buffer.readerIndex();
+        int headerLength;
+        while ((headerLength = format.getHeaderLength(buffer, index, end)) > 0) {
+            final int length = format.getBodyLength(buffer, index);
+            if (isCompressible(format, buffer, index, length)) {
+                return true;
+            }
+            index += headerLength + length;
+        }
+        return false;
+    }
+
+    /**
+     * Gets if a frame must be compressed
+     *
+     * @param format the format of the frame
+     * @param buffer the buffer that contains the frame
+     * @param index  the index of the frame
+     * @param length the length of the body of the frame
+     * @return true if the frame must be compressed
+     */
+    private boolean isCompressible(FrameFormat format, ByteBuf buffer, int index, int length) {
+        if (format.isCompressed(buffer, index)) {
+            return false;
+        }
+        final int id = format.getOpcode(buffer, index);
+        if (id == FrameFormat.CONTROL_OPCODE || id >= service.getCapacity()) {
+            return false;
+        }
+        final MessageCodec<?> codec = service.getCodec(id);
+        return codec != null && codec.getCompressionThreshold() != MessageCodec.NO_COMPRESSION
+                && length >= codec.getCompressionThreshold();
+    }
+
+    /**
+     * Copies every frame of a buffer into another, compressing the frames that reach their threshold
+     *
+     * @param format the format of the frames
+     * @param in     the buffer that contains the frames
+     * @param out    the buffer where the frames are written
+     */
+    private void compress(FrameFormat format, ByteBuf in, ByteBuf out) {
+        final int end = in.writerIndex();
+        int index = in.readerIndex();
+        int headerLength;
+        while ((headerLength = format.getHeaderLength(in, index, end)) > 0) {
+            final int length = format.getBodyLength(in, index);
+            if (!isCompressible(format, in, index, length)
+                    || !deflate(format, format.getOpcode(in, index), in, index + headerLength, length, out)) {
+                out.writeBytes(in, index, headerLength + length);
+            }
+            index += headerLength + length;
+        }
+        if (index < end) {
+            out.writeBytes(in, index, end - index);
+        }
+    }
+
+    /**
+     * Writes a frame with its body compressed
+     *
+     * @param format the format of the frame
+     * @param id     the opcode of the frame
+     * @param in     the buffer that contains the body
+     * @param index  the index of the body
+     * @param length the length of the body
+     * @param out    the buffer where the frame is written
+     * @return true if the frame was written, false if the body doesn't shrink and nothing was written
+     */
+    private boolean deflate(FrameFormat format, int id, ByteBuf in, int index, int length, ByteBuf out) {
+        if (deflater == null) {
+            deflater = new Deflater();
+            chunk = new byte[CHUNK_LENGTH];
+        }
+        if (in.hasArray()) {
+            deflater.setInput(in.array(), in.arrayOffset() + index, length);
+        } else {
+            if (input == null || input.length < length) {
+                input = new byte[length];
+            }
+            in.getBytes(index, input, 0, length);
+            deflater.setInput(input, 0, length);
+        }
+        deflater.finish();
+
+        // The length of the uncompressed body reserves enough room in
+        // the header for the length of the compressed one
+        final int headerIndex = out.writerIndex();
+        format.writeHeader(out, id, true, length);
+        final int bodyIndex = out.writerIndex();
+        final int limit = bodyIndex + length;
+        CodecSupport.writeVarInt(out, length);
+        try {
+            while (!deflater.finished()) {
+                final int count = deflater.deflate(chunk);
+                if (out.writerIndex() + count >= limit) {
+                    out.writerIndex(headerIndex);
+                    return false;
+                }
+                out.writeBytes(chunk, 0, count);
+            }
+        } finally {
+            deflater.reset();
+        }
+        format.setBodyLength(out, headerIndex, bodyIndex);
+        return true;
+    }
+}
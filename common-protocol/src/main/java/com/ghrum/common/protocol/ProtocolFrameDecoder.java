@@ -0,0 +1,250 @@
+/**
+ * This file is part of Argentum Online.
+ *
+ * Copyright (c) 2014 Argentum Online <https://github.com/orgs/Argentum-Online/members>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghrum.common.protocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Define the {@link ByteToMessageDecoder} for handling length-prefixed frames
+ * <p>
+ * It will convert raw frames to {@link Message} frames. The header and the body of every frame are checked up front
+ * against the readable bytes so partial frames are left untouched until more bytes arrive, and every complete frame
+ * is decoded from a slice of the cumulation buffer without copying it
+ * <p>
+ * The slice is never retained past decoding, so read bytes can always be discarded from the cumulation buffer. The
+ * bodies of {@link MessageView} messages outlive the read, so they're copied into a buffer of their own instead.
+ * Frames flagged with {@link FrameFormat#COMPRESSED_FLAG} are inflated into a new buffer before being decoded.
+ * <p>
+ * Every channel starts reading {@link FrameFormat#FIXED} headers, and the format is switched by the control frames
+ * sent by the peer, right after them. Control frames are only allowed once the handshake is over, and only switch to
+ * the formats enabled by the service (see {@link MessageLookupService#enableFrameFormat(FrameFormat)}). The length
+ * of every body is bounded by {@link MessageLookupService#getMaxBodyLength(FrameFormat)}, whatever the format.
+ * <p>
+ * Before anything else, the opcode of every frame is resolved against the table of the state of the connection (see
+ * {@link MessageCodec#isAllowed(Connection.State)}), and frames that aren't allowed are discarded as their bytes
+ * arrive, without buffering their body. Then every frame takes a token from the bucket of its opcode (see
+ * {@link MessageCodec#getRateLimit(Connection.State)}). Frames over the limit are skipped, and the channel is closed
+ * once too many frames were discarded or skipped
+ */
+public class ProtocolFrameDecoder extends ByteToMessageDecoder {
+    /**
+     * The limit of the frames dropped by their rate limit before the channel is closed
+     */
+    public static final RateLimit VIOLATION_LIMIT = new RateLimit(8.0, 64);
+
+    private final MessageLookupService service;
+    private FrameFormat format = FrameFormat.FIXED;
+    private int discarding;
+    private FloodGuard guard;
+    private Inflater inflater;
+    private byte[] input;
+
+    /**
+     * Default constructor for {@link ProtocolFrameDecoder}
+     *
+     * @param service the service of the decoder
+     */
+    protected ProtocolFrameDecoder(MessageLookupService service) {
+        this.service = service;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+        final long now = System.nanoTime();
+        final Connection connection = ctx.channel().attr(CommonConnection.CONNECTION_KEY).get();
+        final Connection.State state = (connection != null
+                ? connection.getState() : Connection.State.EXCHANGE_HANDSHAKE);
+        final MessageCodec<?>[] table = service.getCodecTable(state);
+        if (guard == null) {
+            guard = new FloodGuard(service, service.getCapacity(), VIOLATION_LIMIT, now);
+        }
+        if (discarding > 0) {
+            discard(in, discarding);
+            if (discarding > 0) {
+                return;
+            }
+        }
+
+        while (in.isReadable()) {
+            final int index = in.readerIndex();
+            final int headerLength = format.getHeaderLength(in, index, in.writerIndex());
+            if (headerLength == 0) {
+                return;
+            }
+            if (headerLength < 0) {
+                throw new IOException("Message header is malformed");
+            }
+            final int length = format.getBodyLength(in, index);
+            if (length < 0 || length > service.getMaxBodyLength(format)) {
+                throw new IOException("Message body is too large: " + length);
+            }
+            final int id = format.getOpcode(in, index);
+            final MessageCodec<?> codec = (id >= 0 && id < table.length ? table[id] : null);
+            final boolean isControl = (id == FrameFormat.CONTROL_OPCODE && service.isFrameFormatNegotiable()
+                    && state != Connection.State.EXCHANGE_HANDSHAKE);
+            if (codec == null && !isControl) {
+                // The message isn't allowed in the state of the connection,
+                // so the frame is discarded without waiting for its body.
+                // Control frames sent before the handshake end up here too
+                discard(in, headerLength + length);
+                service.getMetrics().recordRejected(id);
+                if (!guard.tolerate(now)) {
+                    in.skipBytes(in.readableBytes());
+                    ctx.close();
+                    return;
+                }
+                continue;
+            }
+            if (in.readableBytes() < headerLength + length) {
+                return;
+            }
+            if (isControl) {
+                // The peer writes every frame after this one with
+                // another format
+                final FrameFormat next = (length == 1
+                        ? FrameFormat.valueOf(in.getUnsignedByte(index + headerLength)) : null);
+                if (next == null) {
+                    throw new IOException("Control frame is malformed");
+                }
+                if (!service.isFrameFormatEnabled(next)) {
+                    throw new IOException("Frame format " + next + " isn't enabled");
+                }
+                in.skipBytes(headerLength + length);
+                format = next;
+                continue;
+            }
+            if (!guard.tryAcquire(id, state, now)) {
+                // The frame is over its limit, so it's skipped without
+                // touching its body
+                in.skipBytes(headerLength + length);
+                service.getMetrics().recordDropped(id);
+                if (!guard.tolerate(now)) {
+                    in.skipBytes(in.readableBytes());
+                    ctx.close();
+                    return;
+                }
+                continue;
+            }
+            final boolean isCompressed = format.isCompressed(in, index);
+            ByteBuf body = (!isCompressed && codec instanceof MessageViewCodec
+                    ? ctx.alloc().buffer(length).writeBytes(in, index + headerLength, length)
+                    : in.slice(index + headerLength, length).retain());
+            in.readerIndex(index + headerLength + length);
+            service.getMetrics().recordInbound(id, headerLength + length);
+
+            try {
+                if (isCompressed) {
+                    final ByteBuf compressed = body;
+                    body = null;
+                    try {
+                        body = inflate(ctx, compressed);
+                    } finally {
+                        compressed.release();
+                    }
+                }
+                out.add(codec.decode(body));
+            } finally {
+                if (body != null) {
+                    body.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * Discards the bytes of a frame, the bytes that haven't arrived yet are discarded by the next reads
+     *
+     * @param in     the cumulation buffer
+     * @param length the number of bytes to discard
+     */
+    private void discard(ByteBuf in, int length) {
+        final int count = Math.min(length, in.readableBytes());
+        in.skipBytes(count);
+        discarding = length - count;
+    }
+
+    /**
+     * Inflates the body of a compressed frame
+     *
+     * @param ctx  the context of the decoder
+     * @param body the compressed body, which starts with the uncompressed length as a varint
+     * @return a new buffer that contains the uncompressed body
+     * @throws IOException if the body is malformed
+     */
+    private ByteBuf inflate(ChannelHandlerContext ctx, ByteBuf body) throws IOException {
+        final int length = CodecSupport.readVarInt(body);
+        if (length < 0 || length > service.getMaxBodyLength(format)) {
+            throw new IOException("Compressed message body is too large: " + length);
+        }
+        if (inflater == null) {
+            inflater = new Inflater();
+        }
+        final int compressedLength = body.readableBytes();
+        if (body.hasArray()) {
+            inflater.setInput(body.array(), body.arrayOffset() + body.readerIndex(), compressedLength);
+        } else {
+            if (input == null || input.length < compressedLength) {
+                input = new byte[compressedLength];
+            }
+            body.getBytes(body.readerIndex(), input, 0, compressedLength);
+            inflater.setInput(input, 0, compressedLength);
+        }
+
+        // One byte more than the uncompressed length is requested, so a body
+        // that inflates into more bytes than announced is detected
+        final ByteBuf out = ctx.alloc().heapBuffer(length + 1);
+        try {
+            final int count = inflater.inflate(out.array(), out.arrayOffset(), length + 1);
+            if (count != length || !inflater.finished()) {
+                throw new IOException("Compressed message body is malformed");
+            }
+            out.writerIndex(length);
+            return out;
+        } catch (DataFormatException ex) {
+            out.release();
+            throw new IOException("Compressed message body is malformed", ex);
+        } catch (IOException ex) {
+            out.release();
+            throw ex;
+        } finally {
+            inflater.reset();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void handlerRemoved0(ChannelHandlerContext ctx) throws Exception {
+        if (inflater != null) {
+            inflater.end();
+            inflater = null;
+        }
+        super.handlerRemoved0(ctx);
+    }
+}
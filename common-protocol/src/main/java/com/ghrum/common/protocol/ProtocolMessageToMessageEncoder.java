@@ -17,16 +17,20 @@
  */
 package com.ghrum.common.protocol;
 
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.MessageToMessageEncoder;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.MessageToByteEncoder;
 
 import java.io.IOException;
-import java.util.List;
 
 /**
- * Define the {@link MessageToMessageEncoder} for turning {@link Message} into bytes
+ * Define the {@link MessageToByteEncoder} for turning {@link Message} into bytes
+ * <p>
+ * Messages are encoded in place into a buffer obtained from the channel's allocator, with the {@link FrameFormat} of
+ * the channel. An {@link EncodedMessage} in that format is written as it is
  */
-public class ProtocolMessageToMessageEncoder extends MessageToMessageEncoder {
+public class ProtocolMessageToMessageEncoder extends MessageToByteEncoder<Message> {
     private final MessageLookupService service;
 
     /**
@@ -35,15 +39,46 @@ public class ProtocolMessageToMessageEncoder extends MessageToMessageEncoder {
      * @param service the service of the decoder
      */
     protected ProtocolMessageToMessageEncoder(MessageLookupService service) throws IOException {
+        super(Message.class, true);
         this.service = service;
     }
 
     /**
      * {@inheritDoc}
      */
-    @SuppressWarnings("unchecked")
     @Override
-    protected void encode(ChannelHandlerContext ctx, Object msg, List out) throws Exception {
-        out.add(service.encode((Message) msg));
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (msg instanceof EncodedMessage) {
+            final FrameFormat format = getFrameFormat(ctx);
+            if (((EncodedMessage) msg).getFrameFormat() == format) {
+                final ByteBuf frame = ((EncodedMessage) msg).content();
+                service.getMetrics().recordOutbound(format, frame, frame.readerIndex(), frame.readableBytes());
+                ctx.write(frame, promise);
+                return;
+            }
+        }
+        super.write(ctx, msg, promise);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void encode(ChannelHandlerContext ctx, Message msg, ByteBuf out) throws Exception {
+        final FrameFormat format = getFrameFormat(ctx);
+        final int index = out.writerIndex();
+        service.encode(msg, out, format);
+        service.getMetrics().recordOutbound(format, out, index, out.writerIndex() - index);
+    }
+
+    /**
+     * Gets the {@link FrameFormat} of the channel
+     *
+     * @param ctx the context of the encoder
+     * @return the format of the frames written to the channel
+     */
+    static FrameFormat getFrameFormat(ChannelHandlerContext ctx) {
+        final FrameFormat format = ctx.channel().attr(CommonConnection.FRAME_FORMAT_KEY).get();
+        return (format != null ? format : FrameFormat.FIXED);
     }
 }
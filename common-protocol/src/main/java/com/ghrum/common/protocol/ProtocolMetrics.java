@@ -0,0 +1,452 @@
+/**
+ * This file is part of Argentum Online.
+ *
+ * Copyright (c) 2014 Argentum Online <https://github.com/orgs/Argentum-Online/members>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghrum.common.protocol;
+
+import io.netty.buffer.ByteBuf;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Define the instrumentation of the protocol
+ * <p>
+ * Every counter is striped so it can be updated from every Netty thread without contention, and the counters are
+ * only summed when a snapshot is taken
+ */
+public final class ProtocolMetrics implements ProtocolMetricsMXBean {
+    /**
+     * The domain of the {@link ObjectName} of the metrics
+     */
+    public static final String DOMAIN = "com.ghrum.common.protocol";
+
+    private final IntFunction<MessageCodec<?>> codecs;
+    private final LongAdder[] messagesIn;
+    private final LongAdder[] bytesIn;
+    private final LongAdder[] messagesOut;
+    private final LongAdder[] bytesOut;
+    private final LongAdder[] invocations;
+    private final LongAdder[] exceptions;
+    private final LongAdder[] messagesDropped;
+    private final LongAdder[] messagesRejected;
+    private final LongAdder messagesRejectedUnknown = new LongAdder();
+    private final LongAccumulator messageQueueHighWaterMark = new LongAccumulator(Math::max, 0L);
+    private final LongAccumulator sendQueueHighWaterMark = new LongAccumulator(Math::max, 0L);
+    private ObjectName name;
+
+    /**
+     * Default constructor for {@link ProtocolMetrics}
+     *
+     * @param size   the number of opcodes
+     * @param codecs the lookup of the codec of every opcode
+     */
+    ProtocolMetrics(int size, IntFunction<MessageCodec<?>> codecs) {
+        this.codecs = codecs;
+        this.messagesIn = newCounters(size);
+        this.bytesIn = newCounters(size);
+        this.messagesOut = newCounters(size);
+        this.bytesOut = newCounters(size);
+        this.invocations = newCounters(size);
+        this.exceptions = newCounters(size);
+        this.messagesDropped = newCounters(size);
+        this.messagesRejected = newCounters(size);
+    }
+
+    /**
+     * Records a received frame
+     *
+     * @param opcode the opcode of the frame
+     * @param bytes  the length of the frame
+     */
+    public void recordInbound(int opcode, int bytes) {
+        if (opcode >= 0 && opcode < messagesIn.length) {
+            messagesIn[opcode].increment();
+            bytesIn[opcode].add(bytes);
+        }
+    }
+
+    /**
+     * Records a sent frame
+     *
+     * @param opcode the opcode of the frame
+     * @param bytes  the length of the frame
+     */
+    public void recordOutbound(int opcode, int bytes) {
+        if (opcode >= 0 && opcode < messagesOut.length) {
+            messagesOut[opcode].increment();
+            bytesOut[opcode].add(bytes);
+        }
+    }
+
+    /**
+     * Records a sent frame given its bytes
+     *
+     * @param format the format of the header of the frame
+     * @param buffer the buffer that contains the frame
+     * @param index  the index of the frame in the buffer
+     * @param bytes  the length of the frame
+     */
+    public void recordOutbound(FrameFormat format, ByteBuf buffer, int index, int bytes) {
+        if (bytes > 0) {
+            recordOutbound(format.getOpcode(buffer, index), bytes);
+        }
+    }
+
+    /**
+     * Records a received frame dropped by its rate limit
+     *
+     * @param opcode the opcode of the frame
+     */
+    public void recordDropped(int opcode) {
+        if (opcode >= 0 && opcode < messagesDropped.length) {
+            messagesDropped[opcode].increment();
+        }
+    }
+
+    /**
+     * Records a received frame rejected since its message isn't allowed in the state of the connection
+     * <p>
+     * Frames whose opcode is out of the bounds of the service are only counted in the total
+     *
+     * @param opcode the opcode of the frame
+     */
+    public void recordRejected(int opcode) {
+        if (opcode >= 0 && opcode < messagesRejected.length) {
+            messagesRejected[opcode].increment();
+        } else {
+            messagesRejectedUnknown.increment();
+        }
+    }
+
+    /**
+     * Records the invocation of a handler
+     *
+     * @param opcode    the opcode of the message handled
+     * @param exception true if the handler threw an exception
+     */
+    public void recordHandler(int opcode, boolean exception) {
+        if (opcode >= 0 && opcode < invocations.length) {
+            invocations[opcode].increment();
+            if (exception) {
+                exceptions[opcode].increment();
+            }
+        }
+    }
+
+    /**
+     * Records the depth of the queue of incoming messages of a connection
+     *
+     * @param depth the number of messages in the queue
+     */
+    public void recordMessageQueue(int depth) {
+        messageQueueHighWaterMark.accumulate(depth);
+    }
+
+    /**
+     * Records the depth of the queue of outgoing messages of a connection
+     *
+     * @param depth the number of messages in the queue
+     */
+    public void recordSendQueue(int depth) {
+        sendQueueHighWaterMark.accumulate(depth);
+    }
+
+    /**
+     * Gets the statistics of a single opcode
+     *
+     * @param opcode the opcode of the message
+     * @return the statistics of the opcode
+     */
+    public OpcodeStatistics getOpcode(int opcode) {
+        final MessageCodec<?> codec = codecs.apply(opcode);
+        return new OpcodeStatistics(opcode, codec != null ? codec.getType().getSimpleName() : null,
+                messagesIn[opcode].sum(), bytesIn[opcode].sum(), messagesOut[opcode].sum(), bytesOut[opcode].sum(),
+                invocations[opcode].sum(), exceptions[opcode].sum(), messagesDropped[opcode].sum(),
+                messagesRejected[opcode].sum());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<OpcodeStatistics> getOpcodes() {
+        final List<OpcodeStatistics> statistics = new ArrayList<>();
+        for (int i = 0; i < messagesIn.length; i++) {
+            final OpcodeStatistics opcode = getOpcode(i);
+            if (opcode.getMessagesIn() != 0 || opcode.getMessagesOut() != 0 || opcode.getMessagesDropped() != 0
+                    || opcode.getMessagesRejected() != 0) {
+                statistics.add(opcode);
+            }
+        }
+        return statistics;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getMessagesIn() {
+        return sum(messagesIn);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getBytesIn() {
+        return sum(bytesIn);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getMessagesOut() {
+        return sum(messagesOut);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getBytesOut() {
+        return sum(bytesOut);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getMessagesDropped() {
+        return sum(messagesDropped);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getMessagesRejected() {
+        return sum(messagesRejected) + messagesRejectedUnknown.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getMessageQueueHighWaterMark() {
+        return messageQueueHighWaterMark.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getSendQueueHighWaterMark() {
+        return sendQueueHighWaterMark.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void resetHighWaterMarks() {
+        messageQueueHighWaterMark.reset();
+        sendQueueHighWaterMark.reset();
+    }
+
+    /**
+     * Publish the metrics in the platform {@link MBeanServer}
+     *
+     * @param label the label that tells apart the metrics of many services
+     * @throws JMException
+     */
+    public synchronized void register(String label) throws JMException {
+        if (name != null) {
+            throw new IllegalStateException("Cannot register the metrics more than once");
+        }
+        final ObjectName objectName = new ObjectName(DOMAIN + ":type=ProtocolMetrics,name=" + ObjectName.quote(label));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        name = objectName;
+    }
+
+    /**
+     * Removes the metrics from the platform {@link MBeanServer}
+     */
+    public synchronized void unregister() {
+        if (name != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            } catch (JMException ex) {
+                // <TODO: Wolftein Use some common logger>
+            }
+            name = null;
+        }
+    }
+
+    /**
+     * Creates an array of counters
+     */
+    private static LongAdder[] newCounters(int size) {
+        final LongAdder[] counters = new LongAdder[size];
+        for (int i = 0; i < size; i++) {
+            counters[i] = new LongAdder();
+        }
+        return counters;
+    }
+
+    /**
+     * Sums an array of counters
+     */
+    private static long sum(LongAdder[] counters) {
+        long total = 0L;
+        for (LongAdder counter : counters) {
+            total += counter.sum();
+        }
+        return total;
+    }
+
+    /**
+     * Define a snapshot of the statistics of a single opcode
+     */
+    public static final class OpcodeStatistics {
+        private final int opcode;
+        private final String name;
+        private final long messagesIn;
+        private final long bytesIn;
+        private final long messagesOut;
+        private final long bytesOut;
+        private final long invocations;
+        private final long exceptions;
+        private final long messagesDropped;
+        private final long messagesRejected;
+
+        /**
+         * Default constructor for {@link OpcodeStatistics}
+         */
+        OpcodeStatistics(int opcode, String name, long messagesIn, long bytesIn, long messagesOut, long bytesOut,
+                         long invocations, long exceptions, long messagesDropped, long messagesRejected) {
+            this.opcode = opcode;
+            this.name = name;
+            this.messagesIn = messagesIn;
+            this.bytesIn = bytesIn;
+            this.messagesOut = messagesOut;
+            this.bytesOut = bytesOut;
+            this.invocations = invocations;
+            this.exceptions = exceptions;
+            this.messagesDropped = messagesDropped;
+            this.messagesRejected = messagesRejected;
+        }
+
+        /**
+         * Gets the opcode of the message
+         *
+         * @return the opcode of the message
+         */
+        public int getOpcode() {
+            return opcode;
+        }
+
+        /**
+         * Gets the name of the message
+         *
+         * @return the simple name of the class of the message or null if the opcode has no codec
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Gets the number of received messages
+         *
+         * @return the number of received messages
+         */
+        public long getMessagesIn() {
+            return messagesIn;
+        }
+
+        /**
+         * Gets the number of received bytes, including the header
+         *
+         * @return the number of received bytes
+         */
+        public long getBytesIn() {
+            return bytesIn;
+        }
+
+        /**
+         * Gets the number of sent messages
+         *
+         * @return the number of sent messages
+         */
+        public long getMessagesOut() {
+            return messagesOut;
+        }
+
+        /**
+         * Gets the number of sent bytes, including the header
+         *
+         * @return the number of sent bytes
+         */
+        public long getBytesOut() {
+            return bytesOut;
+        }
+
+        /**
+         * Gets the number of invocations of the handler
+         *
+         * @return the number of invocations of the handler
+         */
+        public long getInvocations() {
+            return invocations;
+        }
+
+        /**
+         * Gets the number of exceptions thrown by the handler
+         *
+         * @return the number of exceptions thrown by the handler
+         */
+        public long getExceptions() {
+            return exceptions;
+        }
+
+        /**
+         * Gets the number of received messages dropped by their rate limit
+         *
+         * @return the number of received messages dropped by their rate limit
+         */
+        public long getMessagesDropped() {
+            return messagesDropped;
+        }
+
+        /**
+         * Gets the number of received messages rejected since they weren't allowed in the state of their connection
+         *
+         * @return the number of rejected messages
+         */
+        public long getMessagesRejected() {
+            return messagesRejected;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * This file is part of Argentum Online.
+ *
+ * Copyright (c) 2014 Argentum Online <https://github.com/orgs/Argentum-Online/members>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghrum.common.protocol;
+
+import java.util.List;
+
+/**
+ * Define the management interface of {@link ProtocolMetrics}
+ */
+public interface ProtocolMetricsMXBean {
+    /**
+     * Gets the statistics of every opcode that was used at least once
+     *
+     * @return a list containing the statistics of every opcode
+     */
+    public List<ProtocolMetrics.OpcodeStatistics> getOpcodes();
+
+    /**
+     * Gets the number of received messages
+     *
+     * @return the number of received messages
+     */
+    public long getMessagesIn();
+
+    /**
+     * Gets the number of received bytes
+     *
+     * @return the number of received bytes
+     */
+    public long getBytesIn();
+
+    /**
+     * Gets the number of sent messages
+     *
+     * @return the number of sent messages
+     */
+    public long getMessagesOut();
+
+    /**
+     * Gets the number of sent bytes
+     *
+     * @return the number of sent bytes
+     */
+    public long getBytesOut();
+
+    /**
+     * Gets the number of received messages dropped by their rate limit
+     *
+     * @return the number of dropped messages
+     */
+    public long getMessagesDropped();
+
+    /**
+     * Gets the number of received messages rejected since they weren't allowed in the state of their connection
+     *
+     * @return the number of rejected messages
+     */
+    public long getMessagesRejected();
+
+    /**
+     * Gets the highest number of incoming and unprocessed messages of any connection
+     *
+     * @return the high-water mark of the incoming queues
+     */
+    public long getMessageQueueHighWaterMark();
+
+    /**
+     * Gets the highest number of outgoing and unsent messages of any connection
+     *
+     * @return the high-water mark of the outgoing queues
+     */
+    public long getSendQueueHighWaterMark();
+
+    /**
+     * Resets the high-water marks of the queues
+     */
+    public void resetHighWaterMarks();
+}
@@ -0,0 +1,61 @@
+/**
+ * This file is part of Argentum Online.
+ *
+ * Copyright (c) 2014 Argentum Online <https://github.com/orgs/Argentum-Online/members>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghrum.common.protocol;
+
+/**
+ * Define the limit of a token bucket
+ * <p>
+ * The bucket starts full with {@link #getBurst()} tokens, every frame takes a token, and tokens are refilled at
+ * {@link #getPermitsPerSecond()} until the bucket is full again
+ */
+public final class RateLimit {
+    private final double permitsPerSecond;
+    private final int burst;
+
+    /**
+     * Default constructor for {@link RateLimit}
+     *
+     * @param permitsPerSecond the number of tokens refilled every second
+     * @param burst            the max number of tokens of the bucket
+     */
+    public RateLimit(double permitsPerSecond, int burst) {
+        if (permitsPerSecond <= 0.0 || burst <= 0) {
+            throw new IllegalArgumentException("Rate limit must be positive");
+        }
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+    }
+
+    /**
+     * Gets the number of tokens refilled every second
+     *
+     * @return the number of tokens refilled every second
+     */
+    public double getPermitsPerSecond() {
+        return permitsPerSecond;
+    }
+
+    /**
+     * Gets the max number of tokens of the bucket
+     *
+     * @return the max number of tokens of the bucket
+     */
+    public int getBurst() {
+        return burst;
+    }
+}
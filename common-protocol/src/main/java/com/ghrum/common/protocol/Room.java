@@ -0,0 +1,144 @@
+/**
+ * This file is part of Argentum Online.
+ *
+ * Copyright (c) 2014 Argentum Online <https://github.com/orgs/Argentum-Online/members>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghrum.common.protocol;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Define a group of {@link Connection} that receive the same messages
+ * <p>
+ * Members are stored in a dense array that is copied on every change, so a broadcast iterates them without any
+ * lock or lookup into the registry of the manager
+ */
+public final class Room {
+    private static final CommonConnection[] EMPTY = new CommonConnection[0];
+
+    private final Object key;
+    private volatile CommonConnection[] members = EMPTY;
+    private boolean closed;
+
+    /**
+     * Default constructor for {@link Room}
+     *
+     * @param key the unique key of the room
+     */
+    Room(Object key) {
+        this.key = key;
+    }
+
+    /**
+     * Gets the unique key of the room
+     *
+     * @return the unique key of the room
+     */
+    public Object getKey() {
+        return key;
+    }
+
+    /**
+     * Gets the number of members of the room
+     *
+     * @return the number of members of the room
+     */
+    public int size() {
+        return members.length;
+    }
+
+    /**
+     * Gets all members of the room
+     *
+     * @return a list containing all members of the room
+     */
+    public List<Connection> getConnections() {
+        return Collections.unmodifiableList(Arrays.<Connection>asList(members));
+    }
+
+    /**
+     * Gets a snapshot of the members of the room
+     *
+     * @return the members of the room, this array must not be modified
+     */
+    CommonConnection[] getMembers() {
+        return members;
+    }
+
+    /**
+     * Adds a connection to the room
+     *
+     * @param connection the connection to add to the room
+     * @return false if the room was closed, true otherwise
+     */
+    synchronized boolean add(CommonConnection connection) {
+        if (closed) {
+            return false;
+        }
+        final CommonConnection[] current = members;
+        if (indexOf(current, connection) < 0) {
+            final CommonConnection[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = connection;
+            members = updated;
+            connection.rooms.add(this);
+        }
+        return true;
+    }
+
+    /**
+     * Removes a connection from the room, the room is closed once its last member is removed
+     *
+     * @param connection the connection to remove from the room
+     * @return true if the connection was a member of the room
+     */
+    synchronized boolean remove(CommonConnection connection) {
+        final CommonConnection[] current = members;
+        final int index = indexOf(current, connection);
+        if (index < 0) {
+            return false;
+        }
+        final CommonConnection[] updated = Arrays.copyOf(current, current.length - 1);
+        if (index < updated.length) {
+            updated[index] = current[current.length - 1];
+        }
+        members = updated;
+        connection.rooms.remove(this);
+        closed = (updated.length == 0);
+        return true;
+    }
+
+    /**
+     * Gets if the room was closed
+     *
+     * @return true if the room has no members left and cannot be joined anymore
+     */
+    synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Gets the index of a connection in the given array
+     */
+    private static int indexOf(CommonConnection[] array, CommonConnection connection) {
+        for (int i = 0; i < array.length; i++) {
+            if (array[i] == connection) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
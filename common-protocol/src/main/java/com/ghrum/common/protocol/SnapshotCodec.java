@@ -0,0 +1,113 @@
+/**
+ * This file is part of Argentum Online.
+ *
+ * Copyright (c) 2014 Argentum Online <https://github.com/orgs/Argentum-Online/members>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghrum.common.protocol;
+
+import io.netty.buffer.ByteBuf;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Represent the codec for {@link SnapshotMessage}
+ * <p>
+ * Identifiers and headers are written as varints and values as zigzag varints, so the small differences of a delta
+ * usually take a single byte
+ */
+public class SnapshotCodec extends MessageCodec<SnapshotMessage> {
+    private final int fieldCount;
+
+    /**
+     * Default constructor for {@link SnapshotCodec}
+     *
+     * @param opcode     the unique identifier of the message
+     * @param state      the state of the message
+     * @param fieldCount the number of fields of every entity
+     */
+    public SnapshotCodec(int opcode, Connection.State state, int fieldCount) {
+        super(SnapshotMessage.class, opcode, state);
+        if (fieldCount <= 0 || fieldCount > SnapshotHistory.MAX_FIELD_COUNT) {
+            throw new IllegalArgumentException("Field count " + fieldCount + " is out of bounds");
+        }
+        this.fieldCount = fieldCount;
+    }
+
+    /**
+     * Gets the number of fields of every entity
+     *
+     * @return the number of fields of every entity
+     */
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void encode(SnapshotMessage message, ByteBuf out) throws IOException {
+        final int[] values = message.getValues();
+        int position = 0;
+
+        CodecSupport.writeVarInt(out, message.getSequence());
+        out.writeBoolean(message.isReset());
+        CodecSupport.writeVarInt(out, message.getCount());
+        for (int i = 0; i < message.getCount(); i++) {
+            CodecSupport.writeVarInt(out, message.getEntity(i));
+            CodecSupport.writeVarInt(out, message.getHeader(i));
+            for (int fields = Integer.bitCount(message.getMask(i)); fields > 0; fields--) {
+                CodecSupport.writeSignedVarInt(out, values[position++]);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SnapshotMessage decode(ByteBuf buffer) throws IOException {
+        final int sequence = CodecSupport.readVarInt(buffer);
+        final boolean isReset = buffer.readBoolean();
+        final int count = CodecSupport.readLength(buffer);
+        // Every record takes at least two bytes (its entity and its header), and every
+        // value takes at least one of the bytes left after them
+        if (count > buffer.readableBytes() / 2) {
+            throw new IOException("Snapshot count " + count + " is out of bounds");
+        }
+        final int[] entities = new int[count];
+        final int[] headers = new int[count];
+        int[] values = new int[Math.min(count * 2, buffer.readableBytes() - count * 2)];
+        int position = 0;
+
+        for (int i = 0; i < count; i++) {
+            entities[i] = CodecSupport.readVarInt(buffer);
+            headers[i] = CodecSupport.readVarInt(buffer);
+            final int mask = headers[i] >>> 1;
+            if ((mask >>> fieldCount) != 0) {
+                throw new IOException("Snapshot mask " + Integer.toHexString(mask) + " is out of bounds");
+            }
+            final int fields = Integer.bitCount(mask);
+            if (position + fields > values.length) {
+                values = Arrays.copyOf(values, Math.max(values.length * 2, position + fields));
+            }
+            for (int j = 0; j < fields; j++) {
+                values[position++] = CodecSupport.readSignedVarInt(buffer);
+            }
+        }
+        return new SnapshotMessage(sequence, isReset, count, entities, headers, Arrays.copyOf(values, position));
+    }
+}
@@ -0,0 +1,286 @@
+/**
+ * This file is part of Argentum Online.
+ *
+ * Copyright (c) 2014 Argentum Online <https://github.com/orgs/Argentum-Online/members>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghrum.common.protocol;
+
+import java.util.Arrays;
+
+/**
+ * Define the history of the entity states sent to a single connection
+ * <p>
+ * The history stores the last state of every entity known by the receiver and turns every update into the smallest
+ * {@link SnapshotMessage} record: a baseline for a new entity, a delta with only the changed fields otherwise, and
+ * nothing when no field changed. Since frames are delivered in order over the connection, the last state written is
+ * the state the receiver applies the next delta to. After a resync the history is empty, so every entity goes out
+ * as a baseline again.
+ * <p>
+ * The history is an open-addressing table of primitive arrays, so its memory only depends on the number of entities
+ * in view and not on the number of updates. It is not thread-safe, every connection should be updated from a single
+ * thread (for example while pulsing)
+ */
+public final class SnapshotHistory {
+    /**
+     * The max number of fields of an entity
+     */
+    public static final int MAX_FIELD_COUNT = 30;
+    /**
+     * The identifier that marks a free slot, which cannot be used by any entity
+     */
+    public static final int NO_ENTITY = Integer.MIN_VALUE;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final int fieldCount;
+    private final int fullMask;
+    private int[] keys;
+    private int[] states;
+    private int size;
+    private int mask;
+
+    private int[] entities = new int[INITIAL_CAPACITY];
+    private int[] headers = new int[INITIAL_CAPACITY];
+    private int[] values = new int[INITIAL_CAPACITY];
+    private int recordCount;
+    private int valueCount;
+    private boolean isReset;
+
+    /**
+     * Default constructor for {@link SnapshotHistory}
+     *
+     * @param fieldCount the number of fields of every entity
+     */
+    public SnapshotHistory(int fieldCount) {
+        if (fieldCount <= 0 || fieldCount > MAX_FIELD_COUNT) {
+            throw new IllegalArgumentException("Field count " + fieldCount + " is out of bounds");
+        }
+        this.fieldCount = fieldCount;
+        this.fullMask = (1 << fieldCount) - 1;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Gets the number of fields of every entity
+     *
+     * @return the number of fields of every entity
+     */
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * Gets the number of entities known by the receiver
+     *
+     * @return the number of entities of the history
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Updates the state of an entity
+     *
+     * @param entity the identifier of the entity
+     * @param state  the current value of every field of the entity
+     */
+    public void update(int entity, int[] state) {
+        if (entity == NO_ENTITY) {
+            throw new IllegalArgumentException("Entity " + entity + " is reserved");
+        }
+        if (state.length != fieldCount) {
+            throw new IllegalArgumentException("Expected " + fieldCount + " fields but got " + state.length);
+        }
+        int slot = find(entity);
+        if (slot < 0) {
+            slot = insert(entity);
+            System.arraycopy(state, 0, states, slot * fieldCount, fieldCount);
+            append(entity, SnapshotMessage.getHeader(fullMask, true), fieldCount);
+            System.arraycopy(state, 0, values, valueCount, fieldCount);
+            valueCount += fieldCount;
+            return;
+        }
+
+        final int base = slot * fieldCount;
+        int changed = 0;
+        for (int i = 0; i < fieldCount; i++) {
+            if (states[base + i] != state[i]) {
+                changed |= 1 << i;
+            }
+        }
+        if (changed == 0) {
+            return;
+        }
+        append(entity, SnapshotMessage.getHeader(changed, false), Integer.bitCount(changed));
+        for (int i = 0; i < fieldCount; i++) {
+            if ((changed & (1 << i)) != 0) {
+                values[valueCount++] = state[i] - states[base + i];
+                states[base + i] = state[i];
+            }
+        }
+    }
+
+    /**
+     * Removes an entity, usually because it left the view of the receiver
+     *
+     * @param entity the identifier of the entity
+     */
+    public void remove(int entity) {
+        final int slot = find(entity);
+        if (slot >= 0) {
+            delete(slot);
+            append(entity, SnapshotMessage.REMOVED, 0);
+        }
+    }
+
+    /**
+     * Forgets every entity, so the next snapshot resets the receiver and carries every entity as a baseline
+     */
+    public void resync() {
+        Arrays.fill(keys, NO_ENTITY);
+        size = 0;
+        recordCount = 0;
+        valueCount = 0;
+        isReset = true;
+    }
+
+    /**
+     * Forgets an entity, so its next update is sent as a baseline
+     *
+     * @param entity the identifier of the entity
+     */
+    public void resync(int entity) {
+        final int slot = find(entity);
+        if (slot >= 0) {
+            delete(slot);
+        }
+    }
+
+    /**
+     * Creates a snapshot with every record since the last snapshot
+     *
+     * @param sequence the sequence of the snapshot
+     * @return the snapshot or null if nothing changed
+     */
+    public SnapshotMessage flush(int sequence) {
+        if (recordCount == 0 && !isReset) {
+            return null;
+        }
+        final SnapshotMessage message = new SnapshotMessage(sequence, isReset, recordCount,
+                Arrays.copyOf(entities, recordCount),
+                Arrays.copyOf(headers, recordCount),
+                Arrays.copyOf(values, valueCount));
+        recordCount = 0;
+        valueCount = 0;
+        isReset = false;
+        return message;
+    }
+
+    /**
+     * Appends a record to the pending snapshot, making room for its values
+     */
+    private void append(int entity, int header, int fields) {
+        if (recordCount == entities.length) {
+            entities = Arrays.copyOf(entities, recordCount * 2);
+            headers = Arrays.copyOf(headers, recordCount * 2);
+        }
+        if (valueCount + fields > values.length) {
+            values = Arrays.copyOf(values, Math.max(values.length * 2, valueCount + fields));
+        }
+        entities[recordCount] = entity;
+        headers[recordCount] = header;
+        recordCount++;
+    }
+
+    /**
+     * Finds the slot of an entity
+     *
+     * @return the slot of the entity or -1 if the entity is unknown
+     */
+    private int find(int entity) {
+        int slot = hash(entity) & mask;
+        while (keys[slot] != NO_ENTITY) {
+            if (keys[slot] == entity) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Inserts an unknown entity, growing the table when it's half full
+     *
+     * @return the slot of the entity
+     */
+    private int insert(int entity) {
+        if ((size + 1) * 2 > keys.length) {
+            final int[] oldKeys = keys;
+            final int[] oldStates = states;
+            allocate(keys.length * 2);
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != NO_ENTITY) {
+                    final int slot = insert(oldKeys[i]);
+                    System.arraycopy(oldStates, i * fieldCount, states, slot * fieldCount, fieldCount);
+                }
+            }
+        }
+        int slot = hash(entity) & mask;
+        while (keys[slot] != NO_ENTITY) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = entity;
+        size++;
+        return slot;
+    }
+
+    /**
+     * Deletes the entity of a slot, shifting back the entities that collided with it
+     */
+    private void delete(int slot) {
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (keys[next] != NO_ENTITY) {
+            final int ideal = hash(keys[next]) & mask;
+            if (((next - ideal) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                System.arraycopy(states, next * fieldCount, states, hole * fieldCount, fieldCount);
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[hole] = NO_ENTITY;
+        size--;
+    }
+
+    /**
+     * Allocates an empty table
+     */
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        states = new int[capacity * fieldCount];
+        mask = capacity - 1;
+        size = 0;
+        Arrays.fill(keys, NO_ENTITY);
+    }
+
+    /**
+     * Spreads the bits of an identifier, so sequential identifiers don't cluster
+     */
+    private static int hash(int entity) {
+        final int hash = entity * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
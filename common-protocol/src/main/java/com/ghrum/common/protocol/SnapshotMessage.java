@@ -0,0 +1,158 @@
+/**
+ * This file is part of Argentum Online.
+ *
+ * Copyright (c) 2014 Argentum Online <https://github.com/orgs/Argentum-Online/members>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghrum.common.protocol;
+
+/**
+ * Define the {@link Message} that carries the state of many entities in a single tick
+ * <p>
+ * Every entity record has a header with the mask of the fields it carries and whether it's a baseline. A baseline
+ * carries every field as an absolute value, a delta only carries the fields that changed as the difference from the
+ * previous state of the entity, and a record without fields removes the entity. Values of a record are stored in
+ * the order of the bits of its mask, and the values of every record are stored one after another
+ */
+public final class SnapshotMessage implements Message {
+    /**
+     * The header of a record that removes an entity
+     */
+    public static final int REMOVED = 0;
+
+    private final int sequence;
+    private final boolean isReset;
+    private final int count;
+    private final int[] entities;
+    private final int[] headers;
+    private final int[] values;
+
+    /**
+     * Default constructor for {@link SnapshotMessage}
+     *
+     * @param sequence the sequence of the snapshot
+     * @param isReset  true if the receiver must forget every entity before applying the snapshot
+     * @param count    the number of records of the snapshot
+     * @param entities the identifier of the entity of every record
+     * @param headers  the header of every record
+     * @param values   the values of every record
+     */
+    public SnapshotMessage(int sequence, boolean isReset, int count, int[] entities, int[] headers, int[] values) {
+        this.sequence = sequence;
+        this.isReset = isReset;
+        this.count = count;
+        this.entities = entities;
+        this.headers = headers;
+        this.values = values;
+    }
+
+    /**
+     * Gets the header of a record
+     *
+     * @param mask       the mask of the fields of the record
+     * @param isBaseline true if the record is a baseline
+     * @return the header of the record
+     */
+    public static int getHeader(int mask, boolean isBaseline) {
+        return (mask << 1) | (isBaseline ? 1 : 0);
+    }
+
+    /**
+     * Gets the sequence of the snapshot
+     *
+     * @return the sequence of the snapshot
+     */
+    public int getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Gets if the receiver must forget every entity before applying the snapshot
+     *
+     * @return true if the snapshot resets the state of the receiver
+     */
+    public boolean isReset() {
+        return isReset;
+    }
+
+    /**
+     * Gets the number of records of the snapshot
+     *
+     * @return the number of records of the snapshot
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Gets the identifier of the entity of a record
+     *
+     * @param index the index of the record
+     * @return the identifier of the entity
+     */
+    public int getEntity(int index) {
+        return entities[index];
+    }
+
+    /**
+     * Gets the header of a record
+     *
+     * @param index the index of the record
+     * @return the header of the record
+     */
+    public int getHeader(int index) {
+        return headers[index];
+    }
+
+    /**
+     * Gets the mask of the fields of a record
+     *
+     * @param index the index of the record
+     * @return the mask of the fields of the record
+     */
+    public int getMask(int index) {
+        return headers[index] >>> 1;
+    }
+
+    /**
+     * Gets if a record is a baseline
+     *
+     * @param index the index of the record
+     * @return true if the record carries absolute values
+     */
+    public boolean isBaseline(int index) {
+        return (headers[index] & 1) != 0;
+    }
+
+    /**
+     * Gets if a record removes its entity
+     *
+     * @param index the index of the record
+     * @return true if the record removes its entity
+     */
+    public boolean isRemoved(int index) {
+        return headers[index] == REMOVED;
+    }
+
+    /**
+     * Gets the values of every record
+     * <p>
+     * The values of a record follow the values of the previous record, and there is a value for every bit of its mask
+     *
+     * @return the values of every record
+     */
+    public int[] getValues() {
+        return values;
+    }
+}
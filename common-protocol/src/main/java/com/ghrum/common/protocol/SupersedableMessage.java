@@ -0,0 +1,34 @@
+/**
+ * This file is part of Argentum Online.
+ *
+ * Copyright (c) 2014 Argentum Online <https://github.com/orgs/Argentum-Online/members>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghrum.common.protocol;
+
+/**
+ * Define a {@link Message} that replaces any older message of its class and key still queued to the same connection
+ * <p>
+ * This is meant for state updates (for example the position of an entity) where only the newest message matters, so
+ * congested connections don't spend bandwidth on stale updates. The newer message takes the place of the older one
+ * in its queue, and the older one is discarded
+ */
+public interface SupersedableMessage extends Message {
+    /**
+     * Gets the key of the message, usually the identifier of the entity the message is about
+     *
+     * @return the key of the message
+     */
+    public long getSupersedeKey();
+}
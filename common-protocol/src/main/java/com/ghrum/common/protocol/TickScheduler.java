@@ -0,0 +1,354 @@
+/**
+ * This file is part of Argentum Online.
+ *
+ * Copyright (c) 2014 Argentum Online <https://github.com/orgs/Argentum-Online/members>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghrum.common.protocol;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntSupplier;
+
+/**
+ * Define a fixed-rate scheduler that drives a tick on a dedicated thread
+ * <p>
+ * Every tick is scheduled against an absolute deadline so the rate doesn't drift with the duration of the tick, and
+ * the duration of every tick is recorded into a histogram together with the number of overruns
+ */
+public final class TickScheduler {
+    /**
+     * The number of buckets of the duration histogram, each bucket doubles the bound of the previous one
+     */
+    public static final int BUCKETS = 24;
+    /**
+     * The max number of ticks that the {@link Policy#CATCH_UP} policy will run back to back
+     */
+    public static final int MAX_CATCH_UP = 10;
+
+    private final Runnable task;
+    private final IntSupplier connections;
+    private final long period;
+    private final Policy policy;
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+    private final AtomicLong ticks = new AtomicLong();
+    private final AtomicLong overruns = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong maxDuration = new AtomicLong();
+    private final AtomicLong lastDuration = new AtomicLong();
+    private volatile boolean running;
+    private Thread thread;
+
+    /**
+     * Default constructor for {@link TickScheduler}
+     *
+     * @param task        the task to run every tick
+     * @param connections the supplier of the number of connections
+     * @param rate        the number of ticks per second
+     * @param policy      the policy of the scheduler when a tick is late
+     */
+    public TickScheduler(Runnable task, IntSupplier connections, int rate, Policy policy) {
+        if (rate <= 0 || rate > 1000) {
+            throw new IllegalArgumentException("Tick rate " + rate + " is out of bounds");
+        }
+        if (policy == null) {
+            throw new IllegalArgumentException("Trying to set a null tick policy");
+        }
+        this.task = task;
+        this.connections = connections;
+        this.period = TimeUnit.SECONDS.toNanos(1) / rate;
+        this.policy = policy;
+    }
+
+    /**
+     * Starts the scheduler on a new thread
+     *
+     * @param name the name of the thread
+     */
+    public synchronized void start(String name) {
+        if (thread != null) {
+            throw new IllegalStateException("Cannot start the scheduler more than once");
+        }
+        running = true;
+        thread = new Thread(this::run, name);
+        thread.start();
+    }
+
+    /**
+     * Stops the scheduler and waits for the current tick to finish
+     */
+    public synchronized void stop() {
+        running = false;
+        if (thread != null && thread != Thread.currentThread()) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Gets if the scheduler is running
+     *
+     * @return true if the scheduler is running
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Gets the period of a tick
+     *
+     * @return the period of a tick in nanoseconds
+     */
+    public long getPeriod() {
+        return period;
+    }
+
+    /**
+     * Gets a snapshot of the statistics of the scheduler
+     *
+     * @return a snapshot of the statistics
+     */
+    public Statistics getStatistics() {
+        final long[] buckets = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = histogram.get(i);
+        }
+        return new Statistics(period, ticks.get(), overruns.get(), skipped.get(), lastDuration.get(),
+                maxDuration.get(), connections.getAsInt(), buckets);
+    }
+
+    /**
+     * Runs the loop of the scheduler
+     */
+    private void run() {
+        long deadline = System.nanoTime();
+
+        while (running) {
+            final long start = System.nanoTime();
+            try {
+                task.run();
+            } catch (RuntimeException ex) {
+                // <TODO: Wolftein Use some common logger>
+            }
+            final long end = System.nanoTime();
+            record(end - start);
+
+            // Schedule the next tick against the previous deadline rather than the
+            // end of this tick, so the duration of the tick doesn't drift the rate
+            deadline += period;
+            final long late = end - deadline;
+            if (late > 0) {
+                if (policy == Policy.SKIP) {
+                    final long missed = late / period + 1;
+                    skipped.addAndGet(missed);
+                    deadline += missed * period;
+                } else if (late > MAX_CATCH_UP * period) {
+                    skipped.addAndGet(late / period - MAX_CATCH_UP);
+                    deadline = end - MAX_CATCH_UP * period;
+                }
+            }
+
+            long remaining;
+            while (running && (remaining = deadline - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(this, remaining);
+            }
+        }
+    }
+
+    /**
+     * Records the duration of a tick
+     *
+     * @param duration the duration of the tick in nanoseconds
+     */
+    private void record(long duration) {
+        ticks.incrementAndGet();
+        lastDuration.set(duration);
+        if (duration > maxDuration.get()) {
+            maxDuration.set(duration);
+        }
+        if (duration > period) {
+            overruns.incrementAndGet();
+        }
+        histogram.incrementAndGet(Statistics.bucketOf(duration));
+    }
+
+    /**
+     * Define all possible policies when a tick starts late
+     */
+    public enum Policy {
+        /**
+         * Late ticks are run back to back until the scheduler catches up with the rate, up to
+         * {@link TickScheduler#MAX_CATCH_UP} ticks.
+         */
+        CATCH_UP,
+
+        /**
+         * Late ticks are skipped and the scheduler waits for the next deadline.
+         */
+        SKIP
+    }
+
+    /**
+     * Define a snapshot of the statistics of {@link TickScheduler}
+     */
+    public static final class Statistics {
+        private final long period;
+        private final long ticks;
+        private final long overruns;
+        private final long skipped;
+        private final long lastDuration;
+        private final long maxDuration;
+        private final int connections;
+        private final long[] histogram;
+
+        /**
+         * Default constructor for {@link Statistics}
+         */
+        Statistics(long period, long ticks, long overruns, long skipped, long lastDuration, long maxDuration,
+                   int connections, long[] histogram) {
+            this.period = period;
+            this.ticks = ticks;
+            this.overruns = overruns;
+            this.skipped = skipped;
+            this.lastDuration = lastDuration;
+            this.maxDuration = maxDuration;
+            this.connections = connections;
+            this.histogram = histogram;
+        }
+
+        /**
+         * Gets the period of a tick
+         *
+         * @return the period of a tick in nanoseconds
+         */
+        public long getPeriod() {
+            return period;
+        }
+
+        /**
+         * Gets the number of ticks
+         *
+         * @return the number of ticks that were run
+         */
+        public long getTicks() {
+            return ticks;
+        }
+
+        /**
+         * Gets the number of overruns
+         *
+         * @return the number of ticks that took longer than the period
+         */
+        public long getOverruns() {
+            return overruns;
+        }
+
+        /**
+         * Gets the number of skipped ticks
+         *
+         * @return the number of ticks that were dropped because the scheduler was late
+         */
+        public long getSkipped() {
+            return skipped;
+        }
+
+        /**
+         * Gets the duration of the last tick
+         *
+         * @return the duration of the last tick in nanoseconds
+         */
+        public long getLastDuration() {
+            return lastDuration;
+        }
+
+        /**
+         * Gets the duration of the longest tick
+         *
+         * @return the duration of the longest tick in nanoseconds
+         */
+        public long getMaxDuration() {
+            return maxDuration;
+        }
+
+        /**
+         * Gets the number of connections
+         *
+         * @return the number of connections when the snapshot was taken
+         */
+        public int getConnections() {
+            return connections;
+        }
+
+        /**
+         * Gets the duration histogram
+         * <p>
+         * The bucket {@code i} counts every tick that took less than {@link #getBucketBound(int)} nanoseconds and
+         * at least the bound of the previous bucket
+         *
+         * @return the number of ticks for every bucket
+         */
+        public long[] getHistogram() {
+            return histogram.clone();
+        }
+
+        /**
+         * Gets an upper bound of the duration of the given fraction of ticks
+         *
+         * @param percentile the fraction of ticks, between 0 and 1
+         * @return the upper bound of the duration in nanoseconds
+         */
+        public long getPercentile(double percentile) {
+            long total = 0;
+            for (long count : histogram) {
+                total += count;
+            }
+            final long target = (long) Math.ceil(total * percentile);
+            long accumulated = 0;
+            for (int i = 0; i < histogram.length; i++) {
+                accumulated += histogram[i];
+                if (accumulated >= target && accumulated > 0) {
+                    return getBucketBound(i);
+                }
+            }
+            return 0L;
+        }
+
+        /**
+         * Gets the upper bound of a bucket of the histogram
+         *
+         * @param bucket the index of the bucket
+         * @return the upper bound of the bucket in nanoseconds
+         */
+        public static long getBucketBound(int bucket) {
+            return TimeUnit.MICROSECONDS.toNanos(1L << bucket);
+        }
+
+        /**
+         * Gets the bucket of the histogram for the given duration
+         *
+         * @param duration the duration in nanoseconds
+         * @return the index of the bucket
+         */
+        static int bucketOf(long duration) {
+            final long micros = TimeUnit.NANOSECONDS.toMicros(duration);
+            return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        }
+    }
+}
@@ -0,0 +1,361 @@
+/**
+ * This file is part of Argentum Online.
+ *
+ * Copyright (c) 2014 Argentum Online <https://github.com/orgs/Argentum-Online/members>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghrum.common.protocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Define the recorder of the raw traffic of many channels into rolling memory-mapped files
+ * <p>
+ * Every record is reserved lock-free from the current segment and its payload is copied straight from the buffer of
+ * the channel into the mapped file, so recording never allocates nor calls into the file system. The next segment is
+ * mapped ahead of time by a background thread, which also deletes the oldest segments once there are too many.
+ * <p>
+ * Every segment starts with {@link #MAGIC}, {@link #VERSION} and the time the capture started in milliseconds, and
+ * then holds records of:
+ * <ul>
+ * <li>the length of the record, header included (int)</li>
+ * <li>the {@link Type} of the record (byte)</li>
+ * <li>the time since the capture started, in nanoseconds (long)</li>
+ * <li>the connection of the record (long)</li>
+ * <li>the bytes of the record</li>
+ * </ul>
+ * A record with a length of zero marks the end of the segment
+ */
+public final class TrafficCapture implements Closeable {
+    /**
+     * The magic number at the start of every segment
+     */
+    public static final int MAGIC = 0x414F4350;
+    /**
+     * The version of the layout of the segments
+     */
+    public static final int VERSION = 1;
+    /**
+     * The length of the header of every segment
+     */
+    public static final int SEGMENT_HEADER_LENGTH = 16;
+    /**
+     * The length of the header of every record
+     */
+    public static final int RECORD_HEADER_LENGTH = 21;
+    /**
+     * The default length of every segment
+     */
+    public static final int DEFAULT_SEGMENT_LENGTH = 64 << 20;
+    /**
+     * The default max number of written segments kept on the directory
+     */
+    public static final int DEFAULT_MAX_SEGMENTS = 16;
+    /**
+     * The extension of the segments
+     */
+    public static final String EXTENSION = ".capture";
+
+    private final Path directory;
+    private final int segmentLength;
+    private final int maxSegments;
+    private final long startTime = System.nanoTime();
+    private final long startMillis = System.currentTimeMillis();
+    private final AtomicLong connections = new AtomicLong();
+    private final ExecutorService executor
+            = Executors.newSingleThreadExecutor(new DefaultThreadFactory("Protocol-Capture", true));
+    private final Queue<Path> segments = new ArrayDeque<>();
+    private volatile Segment current;
+    private volatile boolean isClosed = false;
+    private Future<Segment> next;
+    private int sequence;
+
+    /**
+     * Default constructor for {@link TrafficCapture}
+     *
+     * @param directory the directory of the segments
+     * @throws IOException if the first segment can't be mapped
+     */
+    public TrafficCapture(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_LENGTH, DEFAULT_MAX_SEGMENTS);
+    }
+
+    /**
+     * Constructor for {@link TrafficCapture}
+     *
+     * @param directory     the directory of the segments
+     * @param segmentLength the length of every segment, in bytes
+     * @param maxSegments   the max number of written segments kept on the directory, not counting the segment mapped
+     *                      ahead of time, or 0 to keep every segment
+     * @throws IOException if the first segment can't be mapped
+     */
+    public TrafficCapture(Path directory, int segmentLength, int maxSegments) throws IOException {
+        if (segmentLength <= SEGMENT_HEADER_LENGTH + RECORD_HEADER_LENGTH) {
+            throw new IllegalArgumentException("Segment length " + segmentLength + " is too short");
+        }
+        if (maxSegments < 0 || maxSegments == 1) {
+            throw new IllegalArgumentException("At least two segments must be kept");
+        }
+        this.directory = Files.createDirectories(directory);
+        this.segmentLength = segmentLength;
+        this.maxSegments = maxSegments;
+        this.current = map(sequence++);
+        this.next = prepare(sequence++);
+    }
+
+    /**
+     * Gets a new identifier for the records of a connection
+     *
+     * @return a unique identifier of a connection in this capture
+     */
+    public long newConnection() {
+        return connections.incrementAndGet();
+    }
+
+    /**
+     * Appends a record to the capture
+     * <p>
+     * Payloads longer than a segment are split across many records
+     *
+     * @param type       the type of the record
+     * @param connection the connection of the record
+     * @param payload    the bytes of the record, which aren't consumed, or null if the record has none
+     */
+    public void append(Type type, long connection, ByteBuf payload) {
+        final long time = System.nanoTime() - startTime;
+        final int maxLength = segmentLength - SEGMENT_HEADER_LENGTH - RECORD_HEADER_LENGTH;
+        int index = (payload != null ? payload.readerIndex() : 0);
+        int remaining = (payload != null ? payload.readableBytes() : 0);
+        do {
+            final int length = Math.min(remaining, maxLength);
+            append(type, connection, time, payload, index, length);
+            index += length;
+            remaining -= length;
+        } while (remaining > 0);
+    }
+
+    /**
+     * Appends a single record to the capture
+     *
+     * @param type       the type of the record
+     * @param connection the connection of the record
+     * @param time       the time of the record
+     * @param payload    the buffer that contains the bytes of the record
+     * @param index      the index of the bytes of the record
+     * @param length     the number of bytes of the record
+     */
+    private void append(Type type, long connection, long time, ByteBuf payload, int index, int length) {
+        while (!isClosed) {
+            final Segment segment = current;
+            final int offset = segment.reserve(RECORD_HEADER_LENGTH + length);
+            if (offset < 0) {
+                roll(segment);
+                continue;
+            }
+            final MappedByteBuffer buffer = segment.buffer;
+            if (length > 0) {
+                final ByteBuffer destination = buffer.duplicate();
+                destination.limit(offset + RECORD_HEADER_LENGTH + length).position(offset + RECORD_HEADER_LENGTH);
+                payload.getBytes(index, destination);
+            }
+            buffer.put(offset + 4, (byte) type.ordinal());
+            buffer.putLong(offset + 5, time);
+            buffer.putLong(offset + 13, connection);
+
+            // The length is written last, so a record that is cut short
+            // reads as the end of the segment
+            buffer.putInt(offset, RECORD_HEADER_LENGTH + length);
+            return;
+        }
+    }
+
+    /**
+     * Replaces a full segment with the segment mapped ahead of time
+     *
+     * @param full the segment that is full
+     */
+    private synchronized void roll(Segment full) {
+        if (isClosed || current != full) {
+            return;
+        }
+        try {
+            current = next.get();
+            next = prepare(sequence++);
+            executor.execute(full.buffer::force);
+        } catch (InterruptedException | ExecutionException ex) {
+            // <TODO: Wolftein Use some common logger>
+            isClosed = true;
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Maps a segment on the background thread
+     *
+     * @param id the sequence number of the segment
+     * @return the future of the segment
+     */
+    private Future<Segment> prepare(int id) {
+        return executor.submit(() -> map(id));
+    }
+
+    /**
+     * Maps a new segment, and deletes the oldest segment when there are too many
+     * <p>
+     * The new segment is the one mapped ahead of time and holds no records yet, so it isn't counted
+     *
+     * @param id the sequence number of the segment
+     * @return the segment
+     * @throws IOException if the segment can't be mapped
+     */
+    private Segment map(int id) throws IOException {
+        final Path path = getPath(id);
+        final MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0L, segmentLength);
+        }
+        buffer.putInt(0, MAGIC).putInt(4, VERSION).putLong(8, startMillis);
+
+        segments.add(path);
+        while (maxSegments > 0 && segments.size() - 1 > maxSegments) {
+            try {
+                Files.deleteIfExists(segments.poll());
+            } catch (IOException ex) {
+                // <TODO: Wolftein Use some common logger>
+            }
+        }
+        return new Segment(buffer);
+    }
+
+    /**
+     * Gets the path of a segment
+     * <p>
+     * The sequence number is padded, so the segments of a capture sort by name in the order they were written
+     *
+     * @param id the sequence number of the segment
+     * @return the path of the segment
+     */
+    private Path getPath(int id) {
+        return directory.resolve(String.format("capture-%d-%06d%s", startMillis, id, EXTENSION));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The written segments are forced to the storage, and the segment mapped ahead of time is deleted
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (isClosed) {
+            return;
+        }
+        isClosed = true;
+        current.buffer.force();
+        next.cancel(false);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1L, TimeUnit.MINUTES);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        if (next.isDone() && !next.isCancelled()) {
+            try {
+                next.get();
+                Files.deleteIfExists(getPath(sequence - 1));
+            } catch (ExecutionException | InterruptedException | IOException ex) {
+                // <TODO: Wolftein Use some common logger>
+            }
+        }
+    }
+
+    /**
+     * Define all possible types of a record of {@link TrafficCapture}
+     */
+    public enum Type {
+        /**
+         * The connection was opened, the record has no bytes.
+         */
+        OPEN,
+
+        /**
+         * The connection was closed, the record has no bytes.
+         */
+        CLOSE,
+
+        /**
+         * The record holds bytes received by the connection.
+         */
+        INBOUND,
+
+        /**
+         * The record holds bytes sent by the connection.
+         */
+        OUTBOUND
+    }
+
+    /**
+     * Define a mapped file of a {@link TrafficCapture}
+     */
+    private static final class Segment {
+        private final MappedByteBuffer buffer;
+        private final AtomicInteger position = new AtomicInteger(SEGMENT_HEADER_LENGTH);
+
+        /**
+         * Default constructor for {@link Segment}
+         *
+         * @param buffer the mapped file of the segment
+         */
+        private Segment(MappedByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        /**
+         * Reserves room for a record
+         *
+         * @param length the length of the record
+         * @return the offset of the record, or -1 if the segment is full
+         */
+        private int reserve(int length) {
+            while (true) {
+                final int offset = position.get();
+                if (offset + length > buffer.capacity()) {
+                    return -1;
+                }
+                if (position.compareAndSet(offset, offset + length)) {
+                    return offset;
+                }
+            }
+        }
+    }
+}
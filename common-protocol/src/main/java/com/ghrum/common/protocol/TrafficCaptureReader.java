@@ -0,0 +1,179 @@
+/**
+ * This file is part of Argentum Online.
+ *
+ * Copyright (c) 2014 Argentum Online <https://github.com/orgs/Argentum-Online/members>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghrum.common.protocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Define the reader of the segments written by {@link TrafficCapture}
+ * <p>
+ * Segments are mapped read-only one at a time, and the bytes of every record are a view of the mapped file that is
+ * only valid until the next record is read
+ */
+public final class TrafficCaptureReader {
+    private final List<Path> segments;
+    private int index;
+    private MappedByteBuffer buffer;
+    private ByteBuf payload;
+    private long startTime;
+    private TrafficCapture.Type type;
+    private long time;
+    private long connection;
+
+    /**
+     * Default constructor for {@link TrafficCaptureReader}
+     *
+     * @param segments the segments of the capture, in the order they were written
+     */
+    public TrafficCaptureReader(List<Path> segments) {
+        this.segments = new ArrayList<>(segments);
+    }
+
+    /**
+     * Gets the segments of every capture in a directory, in the order they were written
+     *
+     * @param directory the directory of the captures
+     * @return the segments of the directory
+     * @throws IOException if the directory can't be listed
+     */
+    public static List<Path> list(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            final List<Path> segments = files
+                    .filter(file -> file.getFileName().toString().endsWith(TrafficCapture.EXTENSION))
+                    .collect(Collectors.toList());
+            Collections.sort(segments);
+            return segments;
+        }
+    }
+
+    /**
+     * Reads the next record
+     *
+     * @return true if a record was read, false if there are no more records
+     * @throws IOException if a segment can't be mapped or is malformed
+     */
+    public boolean next() throws IOException {
+        while (true) {
+            if (buffer != null && buffer.remaining() >= TrafficCapture.RECORD_HEADER_LENGTH) {
+                final int offset = buffer.position();
+                final int length = buffer.getInt(offset);
+                if (length >= TrafficCapture.RECORD_HEADER_LENGTH && length <= buffer.remaining()) {
+                    final int typeIndex = buffer.get(offset + 4);
+                    if (typeIndex < 0 || typeIndex >= TrafficCapture.Type.values().length) {
+                        throw new IOException("Record type " + typeIndex + " is unknown");
+                    }
+                    type = TrafficCapture.Type.values()[typeIndex];
+                    time = buffer.getLong(offset + 5);
+                    connection = buffer.getLong(offset + 13);
+                    buffer.limit(offset + length).position(offset + TrafficCapture.RECORD_HEADER_LENGTH);
+                    payload = Unpooled.wrappedBuffer(buffer.slice());
+                    buffer.limit(buffer.capacity()).position(offset + length);
+                    return true;
+                }
+            }
+            if (index >= segments.size()) {
+                buffer = null;
+                payload = null;
+                return false;
+            }
+            buffer = map(segments.get(index++));
+            startTime = buffer.getLong(8);
+        }
+    }
+
+    /**
+     * Maps a segment, and checks its header
+     *
+     * @param path the path of the segment
+     * @return the segment, positioned at its first record
+     * @throws IOException if the segment can't be mapped or is malformed
+     */
+    private static MappedByteBuffer map(Path path) throws IOException {
+        final MappedByteBuffer segment;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            segment = channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size());
+        }
+        if (segment.capacity() < TrafficCapture.SEGMENT_HEADER_LENGTH
+                || segment.getInt(0) != TrafficCapture.MAGIC || segment.getInt(4) != TrafficCapture.VERSION) {
+            throw new IOException("Segment " + path + " is malformed");
+        }
+        segment.position(TrafficCapture.SEGMENT_HEADER_LENGTH);
+        return segment;
+    }
+
+    /**
+     * Gets the time the capture of the record started
+     * <p>
+     * Every capture has its own connections and its own clock, so a reader of the segments of many captures tells
+     * them apart with this time
+     *
+     * @return the time the capture started, in milliseconds since the epoch
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * Gets the type of the record
+     *
+     * @return the type of the record
+     */
+    public TrafficCapture.Type getType() {
+        return type;
+    }
+
+    /**
+     * Gets the time of the record since its capture started
+     *
+     * @return the time of the record, in nanoseconds
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * Gets the connection of the record
+     *
+     * @return the identifier of the connection of the record, unique in its capture
+     */
+    public long getConnection() {
+        return connection;
+    }
+
+    /**
+     * Gets the bytes of the record
+     *
+     * @return a view of the bytes of the record, valid until the next record is read
+     */
+    public ByteBuf getPayload() {
+        return payload;
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ * This file is part of Argentum Online.
+ *
+ * Copyright (c) 2014 Argentum Online <https://github.com/orgs/Argentum-Online/members>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghrum.common.protocol.annotation;
+
+import com.ghrum.common.protocol.Connection;
+import com.ghrum.common.protocol.Message;
+import com.ghrum.common.protocol.MessageCodec;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a {@link Message} whose {@link MessageCodec} is generated at compile time from its {@link Field} annotated
+ * fields
+ * <p>
+ * The message must declare a non-private constructor that takes every field in order
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface GenerateCodec {
+    /**
+     * Gets the unique identifier of the message
+     *
+     * @return the unique identifier of the message
+     */
+    int opcode();
+
+    /**
+     * Gets the required state of the message
+     *
+     * @return the required state of the message
+     */
+    Connection.State state() default Connection.State.GAME;
+}
@@ -0,0 +1,48 @@
+/**
+ * This file is part of Argentum Online.
+ *
+ * Copyright (c) 2014 Argentum Online <https://github.com/orgs/Argentum-Online/members>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghrum.common.protocol;
+
+import io.netty.channel.Channel;
+
+/**
+ * Define the {@link CommonConnection} used by the benchmarks
+ */
+public final class BenchmarkConnection extends CommonConnection {
+    /**
+     * Default constructor for {@link BenchmarkConnection}
+     *
+     * @param protocol the protocol of the session
+     * @param channel  the channel attached to this session
+     */
+    public BenchmarkConnection(Protocol protocol, Channel channel) {
+        super(protocol, channel);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean disconnect(String reason) {
+        if (isDisconnected) {
+            return false;
+        }
+        isDisconnected = true;
+        channel.close();
+        return true;
+    }
+}
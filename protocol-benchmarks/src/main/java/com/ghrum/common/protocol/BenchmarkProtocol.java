@@ -0,0 +1,226 @@
+/**
+ * This file is part of Argentum Online.
+ *
+ * Copyright (c) 2014 Argentum Online <https://github.com/orgs/Argentum-Online/members>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghrum.common.protocol;
+
+import com.ghrum.common.protocol.annotation.Field;
+import com.ghrum.common.protocol.annotation.GenerateCodec;
+import com.ghrum.common.protocol.annotation.Optional;
+import com.ghrum.common.protocol.annotation.Repeated;
+import com.ghrum.common.protocol.annotation.VarInt;
+import com.ghrum.common.protocol.generated.GeneratedCodecRegistry;
+import io.netty.buffer.ByteBuf;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Define the {@link Protocol} used by the benchmarks, with a set of representative codecs
+ * <ul>
+ * <li>{@link MovementMessage}: a small fixed-size message</li>
+ * <li>{@link ChatMessage}: a string-heavy message</li>
+ * <li>{@link MapSectorMessage}: a large message</li>
+ * <li>{@link CharacterStatusMessage}: a message whose codec is generated at compile time</li>
+ * </ul>
+ */
+public final class BenchmarkProtocol implements Protocol {
+    /**
+     * The length of the tiles of a map sector
+     */
+    public static final int SECTOR_LENGTH = 4096;
+
+    private final MessageLookupService service = new MessageLookupService(256);
+
+    /**
+     * Default constructor for {@link BenchmarkProtocol}
+     */
+    public BenchmarkProtocol() {
+        service.register(new MovementCodec());
+        service.register(new ChatCodec());
+        service.register(new MapSectorCodec());
+        service.install(new GeneratedCodecRegistry());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public MessageLookupService getMessageService() {
+        return service;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Message getKickMessage(String message) {
+        return new ChatMessage("server", message);
+    }
+
+    /**
+     * Writes a length-prefixed UTF-8 string into the buffer
+     */
+    private static void writeString(ByteBuf buffer, String value) {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.writeShort(bytes.length).writeBytes(bytes);
+    }
+
+    /**
+     * Reads a length-prefixed UTF-8 string from the buffer
+     */
+    private static String readString(ByteBuf buffer) {
+        final byte[] bytes = new byte[buffer.readUnsignedShort()];
+        buffer.readBytes(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Define a small fixed-size message
+     */
+    public static final class MovementMessage implements Message {
+        public final int character;
+        public final short x;
+        public final short y;
+        public final byte heading;
+
+        public MovementMessage(int character, short x, short y, byte heading) {
+            this.character = character;
+            this.x = x;
+            this.y = y;
+            this.heading = heading;
+        }
+    }
+
+    /**
+     * Define a string-heavy message
+     */
+    public static final class ChatMessage implements Message {
+        public final String sender;
+        public final String text;
+
+        public ChatMessage(String sender, String text) {
+            this.sender = sender;
+            this.text = text;
+        }
+    }
+
+    /**
+     * Define a large message
+     */
+    public static final class MapSectorMessage implements Message {
+        public final int sector;
+        public final byte[] tiles;
+
+        public MapSectorMessage(int sector, byte[] tiles) {
+            this.sector = sector;
+            this.tiles = tiles;
+        }
+    }
+
+    /**
+     * Define a message whose codec is generated by the codec processor
+     */
+    @GenerateCodec(opcode = 0x04)
+    public static final class CharacterStatusMessage implements Message {
+        @Field(order = 0)
+        @VarInt
+        public final int character;
+        @Field(order = 1, width = 2)
+        public final int health;
+        @Field(order = 2, width = 2)
+        public final int mana;
+        @Field(order = 3, width = 1)
+        public final short level;
+        @Field(order = 4)
+        @Optional
+        public final String title;
+        @Field(order = 5)
+        @Repeated
+        public final byte[] effects;
+
+        public CharacterStatusMessage(int character, int health, int mana, short level, String title,
+                                      byte[] effects) {
+            this.character = character;
+            this.health = health;
+            this.mana = mana;
+            this.level = level;
+            this.title = title;
+            this.effects = effects;
+        }
+    }
+
+    /**
+     * Define the codec for {@link MovementMessage}
+     */
+    public static final class MovementCodec extends MessageCodec<MovementMessage> {
+        public MovementCodec() {
+            super(MovementMessage.class, 0x01, Connection.State.GAME);
+        }
+
+        @Override
+        public void encode(MovementMessage message, ByteBuf out) throws IOException {
+            out.writeInt(message.character).writeShort(message.x).writeShort(message.y).writeByte(message.heading);
+        }
+
+        @Override
+        public MovementMessage decode(ByteBuf buffer) throws IOException {
+            return new MovementMessage(buffer.readInt(), buffer.readShort(), buffer.readShort(), buffer.readByte());
+        }
+    }
+
+    /**
+     * Define the codec for {@link ChatMessage}
+     */
+    public static final class ChatCodec extends MessageCodec<ChatMessage> {
+        public ChatCodec() {
+            super(ChatMessage.class, 0x02, Connection.State.GAME);
+        }
+
+        @Override
+        public void encode(ChatMessage message, ByteBuf out) throws IOException {
+            writeString(out, message.sender);
+            writeString(out, message.text);
+        }
+
+        @Override
+        public ChatMessage decode(ByteBuf buffer) throws IOException {
+            return new ChatMessage(readString(buffer), readString(buffer));
+        }
+    }
+
+    /**
+     * Define the codec for {@link MapSectorMessage}
+     */
+    public static final class MapSectorCodec extends MessageCodec<MapSectorMessage> {
+        public MapSectorCodec() {
+            super(MapSectorMessage.class, 0x03, Connection.State.GAME);
+        }
+
+        @Override
+        public void encode(MapSectorMessage message, ByteBuf out) throws IOException {
+            out.writeInt(message.sector).writeBytes(message.tiles);
+        }
+
+        @Override
+        public MapSectorMessage decode(ByteBuf buffer) throws IOException {
+            final int sector = buffer.readInt();
+            final byte[] tiles = new byte[SECTOR_LENGTH];
+            buffer.readBytes(tiles);
+            return new MapSectorMessage(sector, tiles);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * This file is part of Argentum Online.
+ *
+ * Copyright (c) 2014 Argentum Online <https://github.com/orgs/Argentum-Online/members>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghrum.common.protocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link MessageLookupService#encode(Message, ByteBuf)} and {@link MessageLookupService#decode(int, ByteBuf)}
+ * for every representative codec of {@link BenchmarkProtocol}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+    @Param({"movement", "chat", "sector", "status"})
+    public String codec;
+
+    private MessageLookupService service;
+    private Message message;
+    private ByteBuf out;
+    private ByteBuf body;
+    private int opcode;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        service = new BenchmarkProtocol().getMessageService();
+        message = newMessage(codec);
+        out = PooledByteBufAllocator.DEFAULT.directBuffer(8192);
+
+        final ByteBuf frame = service.encode(message);
+        opcode = frame.readUnsignedByte();
+        body = Unpooled.directBuffer(frame.readUnsignedShort()).writeBytes(frame);
+        frame.release();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        out.release();
+        body.release();
+    }
+
+    /**
+     * Encodes the message in place into a pooled buffer
+     */
+    @Benchmark
+    public ByteBuf encode() throws IOException {
+        out.clear();
+        service.encode(message, out);
+        return out;
+    }
+
+    /**
+     * Encodes the message into a new buffer (the codec fallback path)
+     */
+    @Benchmark
+    public int encodeUnpooled() throws IOException {
+        final ByteBuf frame = service.encode(message);
+        final int length = frame.readableBytes();
+        frame.release();
+        return length;
+    }
+
+    /**
+     * Decodes the message from its body
+     */
+    @Benchmark
+    public Message decode() throws IOException {
+        body.readerIndex(0);
+        return service.decode(opcode, body);
+    }
+
+    /**
+     * Creates a representative message given its name
+     *
+     * @param name the name of the codec
+     * @return the message for the codec
+     */
+    static Message newMessage(String name) {
+        switch (name) {
+            case "movement":
+                return new BenchmarkProtocol.MovementMessage(0x1F2E3D, (short) 50, (short) 72, (byte) 3);
+            case "chat":
+                return new BenchmarkProtocol.ChatMessage("Wolftein",
+                        "Vendo espada dos filos +10, interesados susurrar en Ullathorpe antes del atardecer.");
+            case "sector":
+                final byte[] tiles = new byte[BenchmarkProtocol.SECTOR_LENGTH];
+                Arrays.fill(tiles, (byte) 7);
+                return new BenchmarkProtocol.MapSectorMessage(42, tiles);
+            case "status":
+                return new BenchmarkProtocol.CharacterStatusMessage(0x1F2E3D, 312, 1840, (short) 42, "Guardian",
+                        new byte[]{4, 9, 17});
+            default:
+                throw new IllegalArgumentException("Unknown codec: " + name);
+        }
+    }
+}
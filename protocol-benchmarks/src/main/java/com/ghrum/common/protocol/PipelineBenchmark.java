@@ -0,0 +1,125 @@
+/**
+ * This file is part of Argentum Online.
+ *
+ * Copyright (c) 2014 Argentum Online <https://github.com/orgs/Argentum-Online/members>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghrum.common.protocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the full {@link ProtocolChannelInitializer} pipeline driven through an {@link EmbeddedChannel}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PipelineBenchmark {
+    /**
+     * The number of frames pipelined into a single read
+     */
+    @Param({"1", "32"})
+    public int batch;
+
+    @Param({"movement", "chat", "sector"})
+    public String codec;
+
+    private EmbeddedChannel channel;
+    private Message message;
+    private ByteBuf frames;
+    private int received;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        final BenchmarkProtocol protocol = new BenchmarkProtocol();
+        channel = new EmbeddedChannel(new ProtocolChannelInitializer(protocol.getMessageService(), new Sink()));
+
+        // The embedded channel installs its own inbound collector before the initializer
+        // runs, remove it so inbound frames reach the protocol handlers
+        channel.pipeline().removeFirst();
+        message = CodecBenchmark.newMessage(codec);
+
+        // Frames are only decoded when their message is allowed in the
+        // state of the connection of the channel
+        new BenchmarkConnection(protocol, channel).setState(Connection.State.GAME);
+
+        final ByteBuf frame = protocol.getMessageService().encode(message);
+        frames = channel.alloc().directBuffer(frame.readableBytes() * batch);
+        for (int i = 0; i < batch; i++) {
+            frames.writeBytes(frame, frame.readerIndex(), frame.readableBytes());
+        }
+        frame.release();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        channel.finish();
+        frames.release();
+    }
+
+    /**
+     * Writes a message through the encoder
+     */
+    @Benchmark
+    public int outbound() {
+        channel.writeOutbound(message);
+        final ByteBuf buffer = channel.readOutbound();
+        final int length = buffer.readableBytes();
+        buffer.release();
+        return length;
+    }
+
+    /**
+     * Reads a batch of pipelined frames through the decoder
+     */
+    @Benchmark
+    public int inbound() {
+        channel.writeInbound(frames.retain().duplicate());
+        return received;
+    }
+
+    /**
+     * Define the last handler of the pipeline that consumes every message
+     */
+    @ChannelHandler.Sharable
+    private final class Sink extends SimpleChannelInboundHandler<Message> {
+        @Override
+        protected void messageReceived(ChannelHandlerContext ctx, Message msg) throws Exception {
+            received++;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * This file is part of Argentum Online.
+ *
+ * Copyright (c) 2014 Argentum Online <https://github.com/orgs/Argentum-Online/members>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghrum.common.protocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link CommonConnectionManager#pulse()} with a number of registered connections
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PulseBenchmark {
+    @Param({"1000", "10000", "50000"})
+    public int connections;
+
+    private CommonConnectionManager manager;
+    private EmbeddedChannel[] channels;
+    private BenchmarkConnection[] registry;
+    private Message message;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        final BenchmarkProtocol protocol = new BenchmarkProtocol();
+        manager = new CommonConnectionManager(protocol);
+        channels = new EmbeddedChannel[connections];
+        registry = new BenchmarkConnection[connections];
+        message = CodecBenchmark.newMessage("movement");
+
+        for (int i = 0; i < connections; i++) {
+            channels[i] = new EmbeddedChannel(new ProtocolChannelInitializer(protocol.getMessageService(), null));
+            registry[i] = new BenchmarkConnection(protocol, channels[i]);
+            manager.add(registry[i]);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (EmbeddedChannel channel : channels) {
+            channel.finish();
+        }
+        manager.stop("Benchmark finished");
+    }
+
+    /**
+     * Pulse every connection without any pending message
+     */
+    @Benchmark
+    public void idle() {
+        manager.pulse();
+    }
+
+    /**
+     * Pulse every connection with one inbound and one outbound message pending
+     */
+    @Benchmark
+    public void traffic() {
+        for (BenchmarkConnection connection : registry) {
+            connection.messageReceived(message);
+            connection.send(message);
+        }
+        manager.pulse();
+
+        for (EmbeddedChannel channel : channels) {
+            ByteBuf buffer;
+            while ((buffer = channel.readOutbound()) != null) {
+                buffer.release();
+            }
+        }
+    }
+}
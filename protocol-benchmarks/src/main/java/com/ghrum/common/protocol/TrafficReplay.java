@@ -0,0 +1,227 @@
+/**
+ * This file is part of Argentum Online.
+ *
+ * Copyright (c) 2014 Argentum Online <https://github.com/orgs/Argentum-Online/members>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghrum.common.protocol;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerAdapter;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.ReferenceCountUtil;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Entry point of the replay of a {@link TrafficCapture} against a server
+ * <p>
+ * Every connection of the capture is opened against the server, and the bytes it received are sent again with the
+ * same timing, scaled by the speed of the replay, or as fast as possible. The bytes it sent are left to the server,
+ * whose responses are counted and discarded. Connections that were already open when the capture started are
+ * skipped, since their bytes don't start on a frame.
+ * <p>
+ * Usage: {@code TrafficReplay <host> <port> <speed|max> <segment or directory>...}
+ */
+public final class TrafficReplay {
+    /**
+     * The time to wait for a congested connection before checking it again, in nanoseconds
+     */
+    private static final long CONGESTION_WAIT = TimeUnit.MICROSECONDS.toNanos(100L);
+
+    private final Bootstrap bootstrap = new Bootstrap();
+    private final EventLoopGroup group = new NioEventLoopGroup();
+    private final Map<Long, Channel> channels = new HashMap<>();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final double speed;
+    private long connections;
+    private long records;
+    private long skipped;
+    private long bytesSent;
+
+    /**
+     * Default constructor for {@link TrafficReplay}
+     *
+     * @param host  the host of the server
+     * @param port  the port of the server
+     * @param speed the speed of the replay, or 0 to replay as fast as possible
+     */
+    private TrafficReplay(String host, int port, double speed) {
+        this.speed = speed;
+        bootstrap.group(group)
+                .channel(NioSocketChannel.class)
+                .remoteAddress(host, port)
+                .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                .option(ChannelOption.TCP_NODELAY, true)
+                .handler(new Sink());
+    }
+
+    /**
+     * Runs the replay
+     *
+     * @param args the host and the port of the server, the speed of the replay and the segments to replay
+     * @throws IOException if a segment can't be read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 4) {
+            System.err.println("Usage: TrafficReplay <host> <port> <speed|max> <segment or directory>...");
+            System.exit(1);
+        }
+        final double speed = ("max".equalsIgnoreCase(args[2]) ? 0.0 : Double.parseDouble(args[2]));
+        if (speed < 0.0) {
+            throw new IllegalArgumentException("Speed " + speed + " is negative");
+        }
+        final List<Path> segments = new ArrayList<>();
+        for (int i = 3; i < args.length; i++) {
+            final Path path = Paths.get(args[i]);
+            if (Files.isDirectory(path)) {
+                segments.addAll(TrafficCaptureReader.list(path));
+            } else {
+                segments.add(path);
+            }
+        }
+        final TrafficReplay replay = new TrafficReplay(args[0], Integer.parseInt(args[1]), speed);
+        try {
+            replay.run(new TrafficCaptureReader(segments));
+        } finally {
+            replay.group.shutdownGracefully();
+        }
+    }
+
+    /**
+     * Replays every record of a capture
+     *
+     * @param reader the reader of the capture
+     * @throws IOException if a segment can't be read
+     */
+    private void run(TrafficCaptureReader reader) throws IOException {
+        final long start = System.nanoTime();
+        long origin = start;
+        long startTime = Long.MIN_VALUE;
+        long firstTime = 0L;
+        long lastTime = 0L;
+        long duration = 0L;
+
+        while (reader.next()) {
+            if (reader.getStartTime() != startTime) {
+                // Every capture has its own clock and its own connections,
+                // so the replay of the next capture starts from scratch
+                closeAll();
+                duration += lastTime - firstTime;
+                startTime = reader.getStartTime();
+                firstTime = reader.getTime();
+                origin = System.nanoTime();
+            }
+            lastTime = reader.getTime();
+            if (speed > 0.0) {
+                final long deadline = origin + (long) ((reader.getTime() - firstTime) / speed);
+                long delay;
+                while ((delay = deadline - System.nanoTime()) > 0L) {
+                    LockSupport.parkNanos(delay);
+                }
+            }
+            records++;
+            replay(reader);
+        }
+        closeAll();
+        duration += lastTime - firstTime;
+
+        final double elapsed = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Replayed %d records of %d connections (%d skipped) in %.3f s, recorded in %.3f s%n",
+                records, connections, skipped, elapsed, duration / 1e9);
+        System.out.printf("Sent %d bytes (%.1f MB/s), received %d bytes%n",
+                bytesSent, bytesSent / elapsed / 1e6, bytesReceived.get());
+    }
+
+    /**
+     * Replays a record
+     *
+     * @param reader the reader positioned at the record
+     */
+    private void replay(TrafficCaptureReader reader) {
+        final Long connection = reader.getConnection();
+        switch (reader.getType()) {
+            case OPEN:
+                channels.put(connection, bootstrap.connect().syncUninterruptibly().channel());
+                connections++;
+                break;
+            case CLOSE:
+                final Channel closed = channels.remove(connection);
+                if (closed != null) {
+                    closed.close();
+                }
+                break;
+            case INBOUND:
+                final Channel channel = channels.get(connection);
+                if (channel == null || !channel.isActive()) {
+                    skipped++;
+                    break;
+                }
+                while (!channel.isWritable() && channel.isActive()) {
+                    LockSupport.parkNanos(CONGESTION_WAIT);
+                }
+                final ByteBuf payload = reader.getPayload();
+                bytesSent += payload.readableBytes();
+                channel.writeAndFlush(channel.alloc().directBuffer(payload.readableBytes()).writeBytes(payload));
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Closes every open connection, and waits until they're closed
+     */
+    private void closeAll() {
+        for (Channel channel : channels.values()) {
+            channel.close().syncUninterruptibly();
+        }
+        channels.clear();
+    }
+
+    /**
+     * Define the handler that discards every response of the server
+     */
+    @ChannelHandler.Sharable
+    private final class Sink extends ChannelHandlerAdapter {
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            if (msg instanceof ByteBuf) {
+                bytesReceived.addAndGet(((ByteBuf) msg).readableBytes());
+            }
+            ReferenceCountUtil.release(msg);
+        }
+    }
+}
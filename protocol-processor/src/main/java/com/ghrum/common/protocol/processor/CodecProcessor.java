@@ -0,0 +1,625 @@
+/**
+ * This file is part of Argentum Online.
+ *
+ * Copyright (c) 2014 Argentum Online <https://github.com/orgs/Argentum-Online/members>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghrum.common.protocol.processor;
+
+import com.ghrum.common.protocol.annotation.Field;
+import com.ghrum.common.protocol.annotation.GenerateCodec;
+import com.ghrum.common.protocol.annotation.Optional;
+import com.ghrum.common.protocol.annotation.Repeated;
+import com.ghrum.common.protocol.annotation.VarInt;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Define the annotation processor that generates a {@code MessageCodec} for every {@link GenerateCodec} message
+ * <p>
+ * Every codec encodes and decodes the {@link Field} annotated fields of its message in straight-line code, without
+ * reflection. Once every codec was generated, a {@code CodecRegistry} that creates all of them is generated as well
+ * so they can be installed into a {@code MessageLookupService} at once
+ */
+@SupportedAnnotationTypes({
+        "com.ghrum.common.protocol.annotation.GenerateCodec",
+        "com.ghrum.common.protocol.annotation.Field",
+        "com.ghrum.common.protocol.annotation.Optional",
+        "com.ghrum.common.protocol.annotation.Repeated",
+        "com.ghrum.common.protocol.annotation.VarInt"})
+@SupportedOptions(CodecProcessor.REGISTRY_OPTION)
+public final class CodecProcessor extends AbstractProcessor {
+    /**
+     * The option that sets the qualified name of the generated registry
+     */
+    public static final String REGISTRY_OPTION = "ghrum.codec.registry";
+    /**
+     * The default qualified name of the generated registry
+     */
+    public static final String DEFAULT_REGISTRY = "com.ghrum.common.protocol.generated.GeneratedCodecRegistry";
+
+    private static final String MESSAGE = "com.ghrum.common.protocol.Message";
+    private static final String SUPPORT = "com.ghrum.common.protocol.CodecSupport";
+
+    private final List<TypeElement> messages = new ArrayList<>();
+    private final List<String> codecs = new ArrayList<>();
+    private final Map<Integer, TypeElement> opcodes = new HashMap<>();
+    private boolean isRegistryWritten = false;
+    private boolean isFailed = false;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment round) {
+        final Set<? extends Element> elements = round.getElementsAnnotatedWith(GenerateCodec.class);
+        for (Element element : elements) {
+            if (element.getKind() != ElementKind.CLASS) {
+                error(element, "@GenerateCodec can only be applied to classes");
+                continue;
+            }
+            generateCodec((TypeElement) element);
+        }
+
+        // The registry is generated once a round doesn't produce any new codec,
+        // so it is still compiled together with the codecs it creates
+        if (elements.isEmpty() && !codecs.isEmpty() && !isRegistryWritten && !isFailed) {
+            generateRegistry();
+        }
+        return true;
+    }
+
+    /**
+     * Generates the codec of a message
+     *
+     * @param type the type of the message
+     */
+    private void generateCodec(TypeElement type) {
+        final GenerateCodec definition = type.getAnnotation(GenerateCodec.class);
+        final TypeMirror message = processingEnv.getElementUtils().getTypeElement(MESSAGE).asType();
+        if (!processingEnv.getTypeUtils().isAssignable(type.asType(), message)) {
+            error(type, "@GenerateCodec can only be applied to implementations of " + MESSAGE);
+            return;
+        }
+        if (type.getModifiers().contains(Modifier.ABSTRACT) || !type.getTypeParameters().isEmpty()) {
+            error(type, "@GenerateCodec can only be applied to concrete non-generic classes");
+            return;
+        }
+        final TypeElement previous = opcodes.put(definition.opcode(), type);
+        if (previous != null) {
+            error(type, "Opcode " + definition.opcode() + " is already taken by " + previous.getQualifiedName());
+            return;
+        }
+
+        final List<FieldModel> fields = getFields(type);
+        if (fields == null || !hasConstructor(type, fields)) {
+            return;
+        }
+
+        final String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+        final String qualifiedName = type.getQualifiedName().toString();
+        final String codecName = (packageName.isEmpty() ? qualifiedName
+                : qualifiedName.substring(packageName.length() + 1)).replace(".", "") + "Codec";
+        final String codecQualifiedName = (packageName.isEmpty() ? "" : packageName + ".") + codecName;
+
+        final StringBuilder source = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        source.append("/**\n")
+                .append(" * Define the codec for {@link ").append(qualifiedName).append("}\n")
+                .append(" * <p>\n")
+                .append(" * Generated by ").append(getClass().getName()).append(", do not edit\n")
+                .append(" */\n")
+                .append("public final class ").append(codecName)
+                .append(" extends com.ghrum.common.protocol.MessageCodec<").append(qualifiedName).append("> {\n")
+                .append("    /**\n")
+                .append("     * Default constructor for {@link ").append(codecName).append("}\n")
+                .append("     */\n")
+                .append("    public ").append(codecName).append("() {\n")
+                .append("        super(").append(qualifiedName).append(".class, ").append(definition.opcode())
+                .append(", com.ghrum.common.protocol.Connection.State.").append(definition.state().name())
+                .append(");\n")
+                .append("    }\n\n");
+
+        source.append("    /**\n")
+                .append("     * {@inheritDoc}\n")
+                .append("     */\n")
+                .append("    @Override\n")
+                .append("    public void encode(").append(qualifiedName)
+                .append(" message, io.netty.buffer.ByteBuf out) throws java.io.IOException {\n");
+        for (FieldModel field : fields) {
+            appendEncode(source, field, "message." + field.name);
+        }
+        source.append("    }\n\n");
+
+        source.append("    /**\n")
+                .append("     * {@inheritDoc}\n")
+                .append("     */\n")
+                .append("    @Override\n")
+                .append("    public ").append(qualifiedName)
+                .append(" decode(io.netty.buffer.ByteBuf buffer) throws java.io.IOException {\n");
+        final StringBuilder arguments = new StringBuilder();
+        for (int i = 0; i < fields.size(); i++) {
+            appendDecode(source, fields.get(i), "value" + i);
+            arguments.append(i == 0 ? "" : ", ").append("value").append(i);
+        }
+        source.append("        return new ").append(qualifiedName).append("(").append(arguments).append(");\n")
+                .append("    }\n")
+                .append("}\n");
+
+        try (Writer writer = processingEnv.getFiler().createSourceFile(codecQualifiedName, type).openWriter()) {
+            writer.write(source.toString());
+        } catch (IOException ex) {
+            error(type, "Cannot write the codec: " + ex.getMessage());
+            return;
+        }
+        messages.add(type);
+        codecs.add(codecQualifiedName);
+    }
+
+    /**
+     * Generates the registry of every generated codec
+     */
+    private void generateRegistry() {
+        final String qualifiedName = processingEnv.getOptions().getOrDefault(REGISTRY_OPTION, DEFAULT_REGISTRY);
+        final int separator = qualifiedName.lastIndexOf('.');
+        final String simpleName = qualifiedName.substring(separator + 1);
+
+        final StringBuilder source = new StringBuilder();
+        if (separator > 0) {
+            source.append("package ").append(qualifiedName, 0, separator).append(";\n\n");
+        }
+        source.append("/**\n")
+                .append(" * Define the registry of every generated codec\n")
+                .append(" * <p>\n")
+                .append(" * Generated by ").append(getClass().getName()).append(", do not edit\n")
+                .append(" */\n")
+                .append("public final class ").append(simpleName)
+                .append(" implements com.ghrum.common.protocol.CodecRegistry {\n")
+                .append("    /**\n")
+                .append("     * {@inheritDoc}\n")
+                .append("     */\n")
+                .append("    @Override\n")
+                .append("    public java.util.Collection<com.ghrum.common.protocol.MessageCodec<?>> getCodecs() {\n")
+                .append("        return java.util.Arrays.<com.ghrum.common.protocol.MessageCodec<?>>asList(");
+        for (int i = 0; i < codecs.size(); i++) {
+            source.append(i == 0 ? "\n" : ",\n").append("                new ").append(codecs.get(i)).append("()");
+        }
+        source.append(");\n")
+                .append("    }\n")
+                .append("}\n");
+
+        try (Writer writer = processingEnv.getFiler()
+                .createSourceFile(qualifiedName, messages.toArray(new Element[messages.size()])).openWriter()) {
+            writer.write(source.toString());
+        } catch (IOException ex) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Cannot write the registry: "
+                    + ex.getMessage());
+        }
+        isRegistryWritten = true;
+    }
+
+    /**
+     * Gets every {@link Field} of a message in order
+     *
+     * @param type the type of the message
+     * @return the fields of the message or null if any field is not valid
+     */
+    private List<FieldModel> getFields(TypeElement type) {
+        final List<FieldModel> fields = new ArrayList<>();
+        boolean isValid = true;
+
+        for (VariableElement element : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            final Field annotation = element.getAnnotation(Field.class);
+            if (annotation == null) {
+                continue;
+            }
+            if (element.getModifiers().contains(Modifier.PRIVATE) || element.getModifiers().contains(Modifier.STATIC)) {
+                error(element, "@Field can only be applied to non-private instance fields");
+                isValid = false;
+                continue;
+            }
+            final FieldModel field = new FieldModel(element, annotation.order(), annotation.width(),
+                    element.getAnnotation(VarInt.class) != null,
+                    element.getAnnotation(Optional.class) != null,
+                    element.getAnnotation(Repeated.class) != null);
+            isValid &= validate(field);
+            fields.add(field);
+        }
+        fields.sort(Comparator.comparingInt((FieldModel field) -> field.order));
+        for (int i = 1; i < fields.size(); i++) {
+            if (fields.get(i).order == fields.get(i - 1).order) {
+                error(fields.get(i).element, "Order " + fields.get(i).order + " is already taken");
+                isValid = false;
+            }
+        }
+        return isValid ? fields : null;
+    }
+
+    /**
+     * Validates the annotations of a field against its type
+     *
+     * @param field the field to validate
+     * @return true if the field is valid
+     */
+    private boolean validate(FieldModel field) {
+        final TypeMirror type = field.element.asType();
+        if (field.isRepeated != (type.getKind() == TypeKind.ARRAY)) {
+            error(field.element, "@Repeated must be applied to every array field, and only to them");
+            return false;
+        }
+        if (field.isOptional && type.getKind().isPrimitive()) {
+            error(field.element, "@Optional cannot be applied to primitive fields");
+            return false;
+        }
+        final TypeMirror scalar = (field.isRepeated ? ((ArrayType) type).getComponentType() : type);
+        field.scalar = getScalar(scalar);
+        field.isBoxed = (scalar.getKind() == TypeKind.DECLARED && field.scalar != Scalar.STRING);
+        if (field.scalar == null) {
+            error(field.element, "Type " + type + " is not supported by the generated codecs");
+            return false;
+        }
+        if (field.isVarInt && field.scalar != Scalar.INT && field.scalar != Scalar.LONG) {
+            error(field.element, "@VarInt can only be applied to int and long fields");
+            return false;
+        }
+        if (field.width != 0 && (field.isVarInt || !field.scalar.isWidthSupported(field.width))) {
+            error(field.element, "Width " + field.width + " is not supported by type " + type);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Checks that a message declares a constructor that takes every field in order
+     *
+     * @param type   the type of the message
+     * @param fields the fields of the message
+     * @return true if the constructor exists
+     */
+    private boolean hasConstructor(TypeElement type, List<FieldModel> fields) {
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (constructor.getModifiers().contains(Modifier.PRIVATE)
+                    || constructor.getParameters().size() != fields.size()) {
+                continue;
+            }
+            boolean isMatch = true;
+            for (int i = 0; i < fields.size() && isMatch; i++) {
+                isMatch = processingEnv.getTypeUtils().isSameType(constructor.getParameters().get(i).asType(),
+                        fields.get(i).element.asType());
+            }
+            if (isMatch) {
+                return true;
+            }
+        }
+        error(type, "@GenerateCodec requires a non-private constructor that takes every @Field in order");
+        return false;
+    }
+
+    /**
+     * Appends the statements that encode a field
+     */
+    private void appendEncode(StringBuilder source, FieldModel field, String expression) {
+        String indent = "        ";
+        if (field.isOptional) {
+            source.append(indent).append("out.writeBoolean(").append(expression).append(" != null);\n")
+                    .append(indent).append("if (").append(expression).append(" != null) {\n");
+            indent += "    ";
+        }
+        if (field.isRepeated) {
+            source.append(indent).append(SUPPORT).append(".writeVarInt(out, ").append(expression)
+                    .append(".length);\n");
+            if (field.scalar == Scalar.BYTE && !field.isBoxed) {
+                source.append(indent).append("out.writeBytes(").append(expression).append(");\n");
+            } else {
+                source.append(indent).append("for (int i = 0; i < ").append(expression).append(".length; i++) {\n")
+                        .append(indent).append("    ").append(field.scalar.write(field, expression + "[i]"))
+                        .append(";\n")
+                        .append(indent).append("}\n");
+            }
+        } else {
+            source.append(indent).append(field.scalar.write(field, expression)).append(";\n");
+        }
+        if (field.isOptional) {
+            source.append("        }\n");
+        }
+    }
+
+    /**
+     * Appends the statements that decode a field into a local variable
+     */
+    private void appendDecode(StringBuilder source, FieldModel field, String variable) {
+        final String type = field.element.asType().toString();
+        String indent = "        ";
+        if (field.isOptional) {
+            source.append(indent).append(type).append(" ").append(variable).append(" = null;\n")
+                    .append(indent).append("if (buffer.readBoolean()) {\n");
+            indent += "    ";
+        } else {
+            source.append(indent).append("final ").append(type).append(" ");
+        }
+        if (field.isRepeated) {
+            final String component = ((ArrayType) field.element.asType()).getComponentType().toString();
+            source.append(field.isOptional ? indent : "").append(variable).append(" = new ").append(component)
+                    .append("[").append(SUPPORT).append(".readLength(buffer)];\n");
+            if (field.scalar == Scalar.BYTE && !field.isBoxed) {
+                source.append(indent).append("buffer.readBytes(").append(variable).append(");\n");
+            } else {
+                source.append(indent).append("for (int i = 0; i < ").append(variable).append(".length; i++) {\n")
+                        .append(indent).append("    ").append(variable).append("[i] = ")
+                        .append(field.scalar.read(field)).append(";\n")
+                        .append(indent).append("}\n");
+            }
+        } else {
+            source.append(field.isOptional ? indent : "").append(variable).append(" = ")
+                    .append(field.scalar.read(field)).append(";\n");
+        }
+        if (field.isOptional) {
+            source.append("        }\n");
+        }
+    }
+
+    /**
+     * Gets the scalar of a type
+     *
+     * @param type the type of the field or of the elements of the field
+     * @return the scalar of the type or null if the type is not supported
+     */
+    private Scalar getScalar(TypeMirror type) {
+        TypeMirror primitive = type;
+        if (type.getKind() == TypeKind.DECLARED) {
+            if (type.toString().equals(String.class.getName())) {
+                return Scalar.STRING;
+            }
+            try {
+                primitive = processingEnv.getTypeUtils().unboxedType(type);
+            } catch (IllegalArgumentException ex) {
+                return null;
+            }
+        }
+        switch (primitive.getKind()) {
+            case BOOLEAN:
+                return Scalar.BOOLEAN;
+            case BYTE:
+                return Scalar.BYTE;
+            case CHAR:
+                return Scalar.CHAR;
+            case SHORT:
+                return Scalar.SHORT;
+            case INT:
+                return Scalar.INT;
+            case LONG:
+                return Scalar.LONG;
+            case FLOAT:
+                return Scalar.FLOAT;
+            case DOUBLE:
+                return Scalar.DOUBLE;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Prints an error attached to an element
+     */
+    private void error(Element element, String message) {
+        isFailed = true;
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    /**
+     * Define a {@link Field} of a message
+     */
+    private static final class FieldModel {
+        private final VariableElement element;
+        private final String name;
+        private final int order;
+        private final int width;
+        private final boolean isVarInt;
+        private final boolean isOptional;
+        private final boolean isRepeated;
+        private Scalar scalar;
+        private boolean isBoxed;
+
+        /**
+         * Default constructor for {@link FieldModel}
+         */
+        private FieldModel(VariableElement element, int order, int width, boolean isVarInt, boolean isOptional,
+                           boolean isRepeated) {
+            this.element = element;
+            this.name = element.getSimpleName().toString();
+            this.order = order;
+            this.width = width;
+            this.isVarInt = isVarInt;
+            this.isOptional = isOptional;
+            this.isRepeated = isRepeated;
+        }
+    }
+
+    /**
+     * Define all possible scalar types of a field
+     */
+    private enum Scalar {
+        BOOLEAN,
+        BYTE,
+        CHAR,
+        SHORT(1, 2),
+        INT(1, 2, 3, 4),
+        LONG(1, 2, 3, 4, 8),
+        FLOAT,
+        DOUBLE,
+        STRING;
+
+        private final int[] widths;
+
+        /**
+         * Default constructor for {@link Scalar}
+         *
+         * @param widths the widths supported by the scalar
+         */
+        Scalar(int... widths) {
+            this.widths = widths;
+        }
+
+        /**
+         * Gets if the scalar can be encoded with the given width
+         */
+        private boolean isWidthSupported(int width) {
+            for (int supported : widths) {
+                if (supported == width) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Gets the statement that writes a value of the scalar
+         */
+        private String write(FieldModel field, String expression) {
+            switch (this) {
+                case BOOLEAN:
+                    return "out.writeBoolean(" + expression + ")";
+                case BYTE:
+                    return "out.writeByte(" + expression + ")";
+                case CHAR:
+                    return "out.writeChar(" + expression + ")";
+                case SHORT:
+                    return (field.width == 1 ? "out.writeByte(" : "out.writeShort(") + expression + ")";
+                case INT:
+                    if (field.isVarInt) {
+                        return SUPPORT + ".writeVarInt(out, " + expression + ")";
+                    }
+                    return writeIntegral(field.width, expression);
+                case LONG:
+                    if (field.isVarInt) {
+                        return SUPPORT + ".writeVarLong(out, " + expression + ")";
+                    }
+                    if (field.width == 0 || field.width == 8) {
+                        return "out.writeLong(" + expression + ")";
+                    }
+                    return writeIntegral(field.width, (field.isBoxed ? "(int) (long) " : "(int) ") + expression);
+                case FLOAT:
+                    return "out.writeFloat(" + expression + ")";
+                case DOUBLE:
+                    return "out.writeDouble(" + expression + ")";
+                default:
+                    return SUPPORT + ".writeString(out, " + expression + ")";
+            }
+        }
+
+        /**
+         * Gets the expression that reads a value of the scalar
+         */
+        private String read(FieldModel field) {
+            switch (this) {
+                case BOOLEAN:
+                    return "buffer.readBoolean()";
+                case BYTE:
+                    return "buffer.readByte()";
+                case CHAR:
+                    return "buffer.readChar()";
+                case SHORT:
+                    return field.width == 1 ? "buffer.readUnsignedByte()" : "buffer.readShort()";
+                case INT:
+                    if (field.isVarInt) {
+                        return SUPPORT + ".readVarInt(buffer)";
+                    }
+                    if (field.width == 0 || field.width == 4) {
+                        return "buffer.readInt()";
+                    }
+                    return (field.isBoxed && field.width == 1 ? "(int) " : "") + readIntegral(field.width);
+                case LONG:
+                    if (field.isVarInt) {
+                        return SUPPORT + ".readVarLong(buffer)";
+                    }
+                    if (field.width == 0 || field.width == 8) {
+                        return "buffer.readLong()";
+                    }
+                    if (field.width == 4) {
+                        return "buffer.readUnsignedInt()";
+                    }
+                    return (field.isBoxed ? "(long) " : "") + readIntegral(field.width);
+                case FLOAT:
+                    return "buffer.readFloat()";
+                case DOUBLE:
+                    return "buffer.readDouble()";
+                default:
+                    return SUPPORT + ".readString(buffer)";
+            }
+        }
+
+        /**
+         * Gets the statement that writes an integral value with the given width
+         */
+        private static String writeIntegral(int width, String expression) {
+            switch (width) {
+                case 1:
+                    return "out.writeByte(" + expression + ")";
+                case 2:
+                    return "out.writeShort(" + expression + ")";
+                case 3:
+                    return "out.writeMedium(" + expression + ")";
+                default:
+                    return "out.writeInt(" + expression + ")";
+            }
+        }
+
+        /**
+         * Gets the expression that reads an unsigned integral value with the given width
+         */
+        private static String readIntegral(int width) {
+            switch (width) {
+                case 1:
+                    return "buffer.readUnsignedByte()";
+                case 2:
+                    return "buffer.readUnsignedShort()";
+                default:
+                    return "buffer.readUnsignedMedium()";
+            }
+        }
+    }
+}
@@ -0,0 +1,243 @@
+/**
+ * This file is part of Argentum Online.
+ *
+ * Copyright (c) 2014 Argentum Online <https://github.com/orgs/Argentum-Online/members>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghrum.common.protocol;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Entry point of the swarm JAR
+ * <p>
+ * Drives a swarm of bots against a server, and reports every interval the connect rate, the rate of messages in
+ * both directions and the percentiles of the round-trip latency of the pings. The latency includes the pulse of both
+ * sides, as it's seen by a player. With {@code --server} the swarm is driven against a {@link SwarmServer} in the
+ * same JVM, over loopback, and with {@code --gateway} as well the bots are relayed to that server by a
+ * {@link SwarmGateway} over {@link NodeLink} links.
+ * <p>
+ * Usage: {@code ProtocolSwarm [--option value]... [--server] [--gateway]}
+ * <ul>
+ * <li>{@code --host}, {@code --port}: the address of the server, 127.0.0.1:7666 by default</li>
+ * <li>{@code --bots}: the number of bots, 1000 by default</li>
+ * <li>{@code --connect-rate}: the number of connection attempts per second, 500 by default</li>
+ * <li>{@code --behavior}: the {@link SwarmBehavior} of the bots, MIXED by default</li>
+ * <li>{@code --tick}: the number of ticks per second of the bots and of the server, 20 by default</li>
+ * <li>{@code --ping}: the interval between the pings of every bot in milliseconds, 1000 by default</li>
+ * <li>{@code --duration}, {@code --interval}: the duration of the run and the interval between reports in seconds,
+ * 60 and 5 by default</li>
+ * <li>{@code --sources}: the number of loopback addresses the bots are bound to in turn, from 127.0.0.1 onwards,
+ * since every source address has its own range of ephemeral ports; 0 by default to let the system choose</li>
+ * <li>{@code --threads}: the number of threads of the event loop group of the bots, 0 by default</li>
+ * <li>{@code --room}: the number of entities of every room of the server, 50 by default</li>
+ * <li>{@code --links}: the number of links between the gateway and the server, 1 by default; the server accepts
+ * them on the port after the port of the gateway</li>
+ * </ul>
+ */
+public final class ProtocolSwarm {
+    /**
+     * The percentiles of the latency that are reported
+     */
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.99, 0.999};
+    /**
+     * The labels of the percentiles that are reported
+     */
+    private static final String[] LABELS = {"p50", "p90", "p99", "p99.9"};
+
+    private final SwarmStatistics statistics;
+    private final SwarmClient client;
+    private final SwarmServer server;
+    private final int bots;
+    private long lastConnects;
+    private long lastMessagesOut;
+    private long lastMessagesIn;
+    private long[] lastRoundTrips = new long[SwarmStatistics.Histogram.BUCKETS];
+
+    /**
+     * Default constructor for {@link ProtocolSwarm}
+     *
+     * @param statistics the statistics of the swarm
+     * @param client     the driver of the bots
+     * @param server     the loopback server or null if the swarm is driven against another process
+     * @param bots       the number of bots
+     */
+    private ProtocolSwarm(SwarmStatistics statistics, SwarmClient client, SwarmServer server, int bots) {
+        this.statistics = statistics;
+        this.client = client;
+        this.server = server;
+        this.bots = bots;
+    }
+
+    /**
+     * Runs the swarm
+     *
+     * @param args the options of the swarm
+     */
+    public static void main(String[] args) {
+        final Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if ("--server".equals(args[i]) || "--gateway".equals(args[i])) {
+                options.put(args[i].substring(2), "true");
+            } else if (args[i].startsWith("--") && i + 1 < args.length) {
+                options.put(args[i].substring(2), args[++i]);
+            } else {
+                System.err.println("Usage: ProtocolSwarm [--option value]... [--server] [--gateway]");
+                System.exit(1);
+            }
+        }
+        final String host = options.getOrDefault("host", "127.0.0.1");
+        final int port = Integer.parseInt(options.getOrDefault("port", "7666"));
+        final int bots = Integer.parseInt(options.getOrDefault("bots", "1000"));
+        final int connectRate = Integer.parseInt(options.getOrDefault("connect-rate", "500"));
+        final SwarmBehavior behavior = SwarmBehavior.valueOf(options.getOrDefault("behavior", "MIXED").toUpperCase());
+        final int tick = Integer.parseInt(options.getOrDefault("tick", "20"));
+        final long ping = Long.parseLong(options.getOrDefault("ping", "1000"));
+        final long duration = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("duration", "60")));
+        final long interval = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("interval", "5")));
+        final int threads = Integer.parseInt(options.getOrDefault("threads", "0"));
+
+        final List<InetSocketAddress> sources = new ArrayList<>();
+        final int sourceCount = Integer.parseInt(options.getOrDefault("sources", "0"));
+        for (int i = 1; i <= sourceCount; i++) {
+            sources.add(new InetSocketAddress("127.0.0." + i, 0));
+        }
+
+        SwarmServer server = null;
+        SwarmGateway gateway = null;
+        if (options.containsKey("server")) {
+            server = new SwarmServer(0, Integer.parseInt(options.getOrDefault("room", "50")));
+            if (options.containsKey("gateway")) {
+                server.bindLinks(host, port + 1);
+                gateway = new SwarmGateway(0);
+                gateway.start(host, port, new InetSocketAddress(host, port + 1),
+                        Integer.parseInt(options.getOrDefault("links", "1")));
+            } else {
+                server.bind(host, port);
+            }
+            server.start(tick);
+        }
+        final SwarmStatistics statistics = new SwarmStatistics();
+        final SwarmClient client = new SwarmClient(statistics, threads, tick);
+        final ProtocolSwarm swarm = new ProtocolSwarm(statistics, client, server, bots);
+
+        final long start = System.nanoTime();
+        client.start(new InetSocketAddress(host, port), sources, bots, behavior, ping, connectRate);
+        try {
+            swarm.run(start, duration, interval);
+        } finally {
+            client.stop();
+            if (gateway != null) {
+                gateway.stop();
+            }
+            if (server != null) {
+                server.stop();
+            }
+        }
+    }
+
+    /**
+     * Reports the statistics of the swarm every interval until the run is over
+     *
+     * @param start    the time the swarm was started in nanoseconds
+     * @param duration the duration of the run in nanoseconds
+     * @param interval the interval between reports in nanoseconds
+     */
+    private void run(long start, long duration, long interval) {
+        final long end = start + duration;
+        long last = start;
+
+        while (last - end < 0L) {
+            final long deadline = Math.min(last + interval, end);
+            long delay;
+            while ((delay = deadline - System.nanoTime()) > 0L) {
+                LockSupport.parkNanos(delay);
+            }
+            final long now = System.nanoTime();
+            report(now - start, now - last);
+            last = now;
+        }
+        summarise();
+    }
+
+    /**
+     * Reports the statistics of the last interval
+     *
+     * @param elapsed the time since the swarm was started in nanoseconds
+     * @param period  the length of the interval in nanoseconds
+     */
+    private void report(long elapsed, long period) {
+        final double seconds = period / 1e9;
+        final long connects = statistics.getConnects();
+        final long messagesOut = client.getMetrics().getMessagesOut();
+        final long messagesIn = client.getMetrics().getMessagesIn();
+        final long[] roundTrips = statistics.getRoundTripLatency().getHistogram();
+        final long[] interval = new long[roundTrips.length];
+        for (int i = 0; i < roundTrips.length; i++) {
+            interval[i] = roundTrips[i] - lastRoundTrips[i];
+        }
+
+        final StringBuilder line = new StringBuilder(String.format(
+                "%7.1f s | bots %d/%d in game, %d failed, %d closed | connects %.0f/s | out %.0f msg/s, in %.0f msg/s"
+                        + " | rtt", elapsed / 1e9, client.getBotsInGame(), bots, statistics.getConnectFailures(),
+                statistics.getDisconnects(), (connects - lastConnects) / seconds,
+                (messagesOut - lastMessagesOut) / seconds, (messagesIn - lastMessagesIn) / seconds));
+        appendPercentiles(line, interval);
+        line.append(String.format(" max %.2f ms", statistics.getRoundTripLatency().getThenResetMax() / 1e6));
+        if (server != null) {
+            final TickScheduler.Statistics tick = server.getManager().getScheduler().getStatistics();
+            line.append(String.format(" | server tick p99 %.2f ms, %d overruns",
+                    tick.getPercentile(0.99) / 1e6, tick.getOverruns()));
+        }
+        System.out.println(line);
+
+        lastConnects = connects;
+        lastMessagesOut = messagesOut;
+        lastMessagesIn = messagesIn;
+        lastRoundTrips = roundTrips;
+    }
+
+    /**
+     * Reports the statistics of the whole run
+     */
+    private void summarise() {
+        final StringBuilder line = new StringBuilder(String.format(
+                "Connected %d of %d bots (%d failed), %d reached the game | login",
+                statistics.getConnects(), statistics.getConnectAttempts(), statistics.getConnectFailures(),
+                statistics.getLogins()));
+        appendPercentiles(line, statistics.getLoginLatency().getHistogram());
+        line.append(" ms | rtt");
+        appendPercentiles(line, statistics.getRoundTripLatency().getHistogram());
+        line.append(" ms");
+        System.out.println(line);
+        System.out.printf("Sent %d messages, received %d messages%n",
+                client.getMetrics().getMessagesOut(), client.getMetrics().getMessagesIn());
+    }
+
+    /**
+     * Appends the reported percentiles of a histogram of latencies, in milliseconds
+     */
+    private static void appendPercentiles(StringBuilder line, long[] histogram) {
+        for (int i = 0; i < PERCENTILES.length; i++) {
+            line.append(String.format(" %s %.2f", LABELS[i],
+                    SwarmStatistics.Histogram.getPercentile(histogram, PERCENTILES[i]) / 1e6));
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * This file is part of Argentum Online.
+ *
+ * Copyright (c) 2014 Argentum Online <https://github.com/orgs/Argentum-Online/members>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghrum.common.protocol;
+
+import java.util.Random;
+
+/**
+ * Define all possible behaviors of a {@link SwarmBot} in game
+ */
+public enum SwarmBehavior {
+    /**
+     * The bot walks around at the pace of a character.
+     */
+    WALKER {
+        @Override
+        public long act(SwarmBot bot, Random random) {
+            bot.send(new SwarmProtocol.WalkMessage((byte) (1 + random.nextInt(HEADINGS))));
+            return 250L;
+        }
+    },
+
+    /**
+     * The bot talks to its room every few seconds.
+     */
+    CHATTER {
+        @Override
+        public long act(SwarmBot bot, Random random) {
+            bot.send(new SwarmProtocol.ChatMessage(bot.getEntity(), PHRASES[random.nextInt(PHRASES.length)]));
+            return 2000L + random.nextInt(4000);
+        }
+    },
+
+    /**
+     * The bot attacks the entities around it, and steps now and then.
+     */
+    FIGHTER {
+        @Override
+        public long act(SwarmBot bot, Random random) {
+            if (random.nextInt(4) == 0) {
+                return WALKER.act(bot, random);
+            }
+            bot.send(new SwarmProtocol.AttackMessage(Math.max(0, bot.getEntity() + random.nextInt(9) - 4)));
+            return 500L;
+        }
+    },
+
+    /**
+     * The bot mostly walks, and fights or talks now and then.
+     */
+    MIXED {
+        @Override
+        public long act(SwarmBot bot, Random random) {
+            final int roll = random.nextInt(10);
+            if (roll < 7) {
+                return WALKER.act(bot, random);
+            }
+            return (roll < 9 ? FIGHTER.act(bot, random) : CHATTER.act(bot, random));
+        }
+    };
+
+    /**
+     * The number of headings a bot can walk towards
+     */
+    private static final int HEADINGS = 4;
+
+    /**
+     * The lines of chat of the bots
+     */
+    private static final String[] PHRASES = {
+            "Hola!", "Alguien vende pociones?", "Vamos a Dungeon Newbie", "Necesito party para el dragon",
+            "Compro espada larga", "Donde queda Ullathorpe?", "gg"
+    };
+
+    /**
+     * Acts once
+     *
+     * @param bot    the bot that acts
+     * @param random the source of randomness of the tick
+     * @return the delay until the next action of the bot, in milliseconds
+     */
+    public abstract long act(SwarmBot bot, Random random);
+}
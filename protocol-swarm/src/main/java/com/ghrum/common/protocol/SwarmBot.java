@@ -0,0 +1,198 @@
+/**
+ * This file is part of Argentum Online.
+ *
+ * Copyright (c) 2014 Argentum Online <https://github.com/orgs/Argentum-Online/members>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghrum.common.protocol;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Define a simulated client of the swarm
+ * <p>
+ * A bot walks the session through every {@link Connection.State}, from the handshake to the game, and once in game it
+ * acts on every tick of the swarm according to its {@link SwarmBehavior}, and pings the server to probe the
+ * round-trip latency
+ */
+public final class SwarmBot {
+    private final int id;
+    private final SwarmBehavior behavior;
+    private final SwarmStatistics statistics;
+    private final long pingInterval;
+    private volatile Connection connection;
+    private volatile int entity = -1;
+    private volatile long connectTime;
+    private boolean isStarted;
+    private long nextAction;
+    private long nextPing;
+
+    /**
+     * Default constructor for {@link SwarmBot}
+     *
+     * @param id           the unique id of the bot
+     * @param behavior     the behavior of the bot in game
+     * @param statistics   the statistics of the swarm
+     * @param pingInterval the interval between pings in milliseconds
+     */
+    public SwarmBot(int id, SwarmBehavior behavior, SwarmStatistics statistics, long pingInterval) {
+        this.id = id;
+        this.behavior = behavior;
+        this.statistics = statistics;
+        this.pingInterval = TimeUnit.MILLISECONDS.toNanos(pingInterval);
+    }
+
+    /**
+     * Gets the unique id of the bot
+     *
+     * @return the unique id of the bot
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Gets the behavior of the bot
+     *
+     * @return the behavior of the bot in game
+     */
+    public SwarmBehavior getBehavior() {
+        return behavior;
+    }
+
+    /**
+     * Gets the connection of the bot
+     *
+     * @return the connection of the bot or null if the bot isn't connected yet
+     */
+    public Connection getConnection() {
+        return connection;
+    }
+
+    /**
+     * Gets the entity of the bot
+     *
+     * @return the entity assigned by the server or -1 if the bot isn't identified yet
+     */
+    public int getEntity() {
+        return entity;
+    }
+
+    /**
+     * Gets if the bot is in game
+     *
+     * @return true if the connection of the bot is active and in the {@link Connection.State#GAME} state
+     */
+    public boolean isInGame() {
+        final Connection current = connection;
+        return current != null && current.isActive() && current.getState() == Connection.State.GAME;
+    }
+
+    /**
+     * Sends a message to the server
+     *
+     * @param message the message to send
+     */
+    public void send(Message message) {
+        connection.send(message);
+    }
+
+    /**
+     * Acts once if the bot is in game and the delay of its last action has elapsed
+     *
+     * @param now    the time of the tick in nanoseconds
+     * @param random the source of randomness of the tick
+     */
+    void tick(long now, Random random) {
+        if (!isInGame()) {
+            return;
+        }
+        if (!isStarted) {
+            // Spread the first ping and the first action of the bots that
+            // reached the game on the same tick across the whole interval
+            isStarted = true;
+            nextPing = now + (long) (random.nextDouble() * pingInterval);
+            nextAction = now + TimeUnit.MILLISECONDS.toNanos(random.nextInt(1000));
+        }
+        if (now - nextPing >= 0L) {
+            nextPing = now + pingInterval;
+            send(new SwarmProtocol.PingMessage(System.nanoTime()));
+        }
+        if (now - nextAction >= 0L) {
+            nextAction = now + TimeUnit.MILLISECONDS.toNanos(behavior.act(this, random));
+        }
+    }
+
+    /**
+     * Handle the connection attempt of the bot
+     */
+    void connecting() {
+        connectTime = System.nanoTime();
+        statistics.recordConnectAttempt();
+    }
+
+    /**
+     * Handle the connection of the bot, and starts the handshake
+     *
+     * @param connection the connection of the bot
+     */
+    void connected(Connection connection) {
+        this.connection = connection;
+        connection.setAttachment(this);
+        statistics.recordConnect();
+        connection.send(new SwarmProtocol.HandshakeMessage(SwarmProtocol.VERSION));
+    }
+
+    /**
+     * Handle the disconnection of the bot
+     */
+    void disconnected() {
+        statistics.recordDisconnect();
+    }
+
+    /**
+     * Handle the handshake of the server, and starts the identification
+     *
+     * @param message the handshake of the server
+     */
+    void handshake(SwarmProtocol.HandshakeMessage message) {
+        if (message.version != SwarmProtocol.VERSION) {
+            connection.disconnect("Protocol version " + message.version + " isn't supported");
+            return;
+        }
+        connection.setState(Connection.State.EXCHANGE_IDENTIFICATION);
+        connection.send(new SwarmProtocol.IdentificationMessage(0, "Bot" + id));
+    }
+
+    /**
+     * Handle the identification of the server, and enters the game
+     *
+     * @param message the identification of the server
+     */
+    void identified(SwarmProtocol.IdentificationMessage message) {
+        entity = message.entity;
+        connection.setState(Connection.State.GAME);
+        statistics.recordLogin(System.nanoTime() - connectTime);
+    }
+
+    /**
+     * Handle the echo of a ping
+     *
+     * @param message the ping echoed by the server
+     */
+    void pong(SwarmProtocol.PingMessage message) {
+        statistics.recordRoundTrip(System.nanoTime() - message.time);
+    }
+}
@@ -0,0 +1,206 @@
+/**
+ * This file is part of Argentum Online.
+ *
+ * Copyright (c) 2014 Argentum Online <https://github.com/orgs/Argentum-Online/members>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghrum.common.protocol;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioSocketChannel;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Define the driver of the bots of the swarm
+ * <p>
+ * Every bot shares a single event loop group and a single {@link CommonConnectionManager}, so tens of thousands of
+ * bots fit in one JVM. The bots are connected at a fixed rate by a dedicated thread, and a {@link TickScheduler}
+ * makes every bot in game act and then pulses the manager, which flushes what the bots sent on the event loop of
+ * every channel
+ */
+public final class SwarmClient {
+    private final SwarmProtocol protocol = new SwarmProtocol();
+    private final CommonConnectionManager manager = new CommonConnectionManager(protocol);
+    private final Bootstrap bootstrap = new Bootstrap();
+    private final Random random = new Random();
+    private final SwarmStatistics statistics;
+    private final EventLoopGroup group;
+    private final TickScheduler scheduler;
+    private volatile boolean running;
+    private volatile SwarmBot[] bots = new SwarmBot[0];
+    private Thread connector;
+
+    /**
+     * Default constructor for {@link SwarmClient}
+     *
+     * @param statistics the statistics of the swarm
+     * @param threads    the number of threads of the event loop group, or 0 for the default number
+     * @param rate       the number of ticks per second
+     */
+    public SwarmClient(SwarmStatistics statistics, int threads, int rate) {
+        this.statistics = statistics;
+        this.group = new NioEventLoopGroup(threads);
+        this.scheduler = new TickScheduler(this::tick,
+                () -> (int) (statistics.getConnects() - statistics.getDisconnects()), rate, TickScheduler.Policy.SKIP);
+
+        final MessageLookupService service = protocol.getMessageService();
+        service.register(SwarmProtocol.HandshakeMessage.class,
+                (connection, message) -> getBot(connection).handshake(message));
+        service.register(SwarmProtocol.IdentificationMessage.class,
+                (connection, message) -> getBot(connection).identified(message));
+        service.register(SwarmProtocol.PingMessage.class, (connection, message) -> getBot(connection).pong(message));
+        service.freeze();
+
+        manager.setPulseMode(CommonConnectionManager.PulseMode.EVENT_LOOP);
+        bootstrap.group(group)
+                .channel(NioSocketChannel.class)
+                .handler(new ProtocolChannelInitializer(service, new SwarmHandler(protocol, manager)))
+                .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                .option(ChannelOption.TCP_NODELAY, true);
+    }
+
+    /**
+     * Starts the swarm
+     *
+     * @param remote       the address of the server
+     * @param sources      the local addresses the bots are bound to in turn, or empty to let the system choose
+     * @param count        the number of bots
+     * @param behavior     the behavior of the bots in game
+     * @param pingInterval the interval between the pings of every bot, in milliseconds
+     * @param connectRate  the number of connection attempts per second
+     */
+    public synchronized void start(InetSocketAddress remote, List<InetSocketAddress> sources, int count,
+                                   SwarmBehavior behavior, long pingInterval, int connectRate) {
+        if (connector != null) {
+            throw new IllegalStateException("Cannot start the swarm more than once");
+        }
+        if (connectRate <= 0) {
+            throw new IllegalArgumentException("Connect rate " + connectRate + " is out of bounds");
+        }
+        final SwarmBot[] created = new SwarmBot[count];
+        for (int i = 0; i < count; i++) {
+            created[i] = new SwarmBot(i, behavior, statistics, pingInterval);
+        }
+        bots = created;
+
+        running = true;
+        scheduler.start("Swarm-Tick");
+        connector = new Thread(() -> connect(created, remote, sources, connectRate), "Swarm-Connector");
+        connector.start();
+    }
+
+    /**
+     * Stops the swarm and closes the connection of every bot
+     */
+    public synchronized void stop() {
+        running = false;
+        if (connector != null) {
+            try {
+                connector.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        scheduler.stop();
+        manager.stop("Swarm stopped");
+        group.shutdownGracefully();
+    }
+
+    /**
+     * Gets the number of bots in game
+     *
+     * @return the number of bots in game
+     */
+    public int getBotsInGame() {
+        int total = 0;
+        for (SwarmBot bot : bots) {
+            if (bot.isInGame()) {
+                total++;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Gets the metrics of the protocol of the bots
+     *
+     * @return the metrics of the protocol of the bots
+     */
+    public ProtocolMetrics getMetrics() {
+        return protocol.getMessageService().getMetrics();
+    }
+
+    /**
+     * Gets the scheduler of the ticks of the swarm
+     *
+     * @return the scheduler of the ticks of the swarm
+     */
+    public TickScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Connects every bot, pacing the attempts at the given rate
+     */
+    private void connect(SwarmBot[] bots, InetSocketAddress remote, List<InetSocketAddress> sources, int rate) {
+        final long period = TimeUnit.SECONDS.toNanos(1) / rate;
+        long deadline = System.nanoTime();
+
+        for (int i = 0; i < bots.length && running; i++) {
+            long delay;
+            while ((delay = deadline - System.nanoTime()) > 0L) {
+                LockSupport.parkNanos(delay);
+            }
+            deadline += period;
+
+            final SwarmBot bot = bots[i];
+            final Bootstrap attempt = bootstrap.clone().attr(SwarmHandler.BOT_KEY, bot);
+            bot.connecting();
+            (sources.isEmpty() ? attempt.connect(remote) : attempt.connect(remote, sources.get(i % sources.size())))
+                    .addListener((ChannelFuture future) -> {
+                        if (!future.isSuccess()) {
+                            statistics.recordConnectFailure();
+                        }
+                    });
+        }
+    }
+
+    /**
+     * Makes every bot in game act, and pulses their connections
+     */
+    private void tick() {
+        final long now = System.nanoTime();
+        for (SwarmBot bot : bots) {
+            bot.tick(now, random);
+        }
+        manager.pulse();
+    }
+
+    /**
+     * Gets the bot of a connection
+     */
+    private static SwarmBot getBot(Connection connection) {
+        return (SwarmBot) connection.getAttachment();
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * This file is part of Argentum Online.
+ *
+ * Copyright (c) 2014 Argentum Online <https://github.com/orgs/Argentum-Online/members>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghrum.common.protocol;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Define the loopback gateway between the swarm and a {@link SwarmServer}
+ * <p>
+ * The gateway accepts the bots and relays every one of them to a session of one of its {@link NodeLink}, in turn, so
+ * the server handles every bot over a handful of links rather than a socket per bot
+ */
+public final class SwarmGateway {
+    private final ServerBootstrap bootstrap = new ServerBootstrap();
+    private final Bootstrap linkBootstrap = new Bootstrap();
+    private final List<NodeLink> links = new ArrayList<>();
+    private final AtomicInteger nextLink = new AtomicInteger();
+    private final EventLoopGroup bossGroup;
+    private final EventLoopGroup workerGroup;
+
+    /**
+     * Default constructor for {@link SwarmGateway}
+     *
+     * @param workers the number of worker threads, or 0 for the default number
+     */
+    public SwarmGateway(int workers) {
+        this.bossGroup = new NioEventLoopGroup(1);
+        this.workerGroup = new NioEventLoopGroup(workers);
+
+        bootstrap.group(bossGroup, workerGroup)
+                .channel(NioServerSocketChannel.class)
+                .childHandler(new RelayInitializer())
+                .option(ChannelOption.SO_BACKLOG, 4096)
+                .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                .childOption(ChannelOption.TCP_NODELAY, true);
+        linkBootstrap.group(workerGroup)
+                .channel(NioSocketChannel.class)
+                .handler(new NodeLinkInitializer(true, null))
+                .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                .option(ChannelOption.TCP_NODELAY, true);
+    }
+
+    /**
+     * Connects the links to the server, and binds the gateway to an address and a port where the bots connect
+     *
+     * @param address the address to bind to
+     * @param port    the port to bind to
+     * @param server  the address where the server accepts links
+     * @param count   the number of links
+     */
+    public void start(String address, int port, InetSocketAddress server, int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("Link count " + count + " is out of bounds");
+        }
+        for (int i = 0; i < count; i++) {
+            final Channel channel = linkBootstrap.connect(server).syncUninterruptibly().channel();
+            links.add(channel.attr(NodeLink.LINK_KEY).get());
+        }
+        bootstrap.bind(address, port).syncUninterruptibly();
+    }
+
+    /**
+     * Stops the gateway and closes every link
+     */
+    public void stop() {
+        bossGroup.shutdownGracefully();
+        workerGroup.shutdownGracefully();
+    }
+
+    /**
+     * Define the {@link ChannelInitializer} that relays every bot to the next link
+     */
+    private final class RelayInitializer extends ChannelInitializer<Channel> {
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected void initChannel(Channel ch) throws Exception {
+            final NodeLink link = links.get((nextLink.getAndIncrement() & Integer.MAX_VALUE) % links.size());
+            ch.pipeline().addLast(new LinkRelayHandler(link));
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ * This file is part of Argentum Online.
+ *
+ * Copyright (c) 2014 Argentum Online <https://github.com/orgs/Argentum-Online/members>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghrum.common.protocol;
+
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.util.AttributeKey;
+
+/**
+ * Define the handler shared by every channel of the swarm, on either side of the loopback
+ * <p>
+ * A {@link SwarmConnection} is added to the manager once the channel is active, and every decoded message is handed
+ * to it. On the side of the bots the channel carries its {@link SwarmBot}, which starts the handshake
+ */
+@ChannelHandler.Sharable
+final class SwarmHandler extends SimpleChannelInboundHandler<Message> {
+    /**
+     * The key of the bot that owns a channel
+     */
+    static final AttributeKey<SwarmBot> BOT_KEY = AttributeKey.valueOf("SwarmBot");
+
+    private final Protocol protocol;
+    private final CommonConnectionManager manager;
+
+    /**
+     * Default constructor for {@link SwarmHandler}
+     *
+     * @param protocol the protocol of the connections
+     * @param manager  the manager of the connections
+     */
+    SwarmHandler(Protocol protocol, CommonConnectionManager manager) {
+        super(false);
+        this.protocol = protocol;
+        this.manager = manager;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        final SwarmConnection connection = new SwarmConnection(protocol, ctx.channel());
+        manager.add(connection);
+
+        final SwarmBot bot = ctx.channel().attr(BOT_KEY).get();
+        if (bot != null) {
+            ctx.channel().closeFuture().addListener(future -> bot.disconnected());
+            bot.connected(connection);
+        }
+        super.channelActive(ctx);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void messageReceived(ChannelHandlerContext ctx, Message msg) throws Exception {
+        final Connection connection = ctx.channel().attr(CommonConnection.CONNECTION_KEY).get();
+        if (connection != null) {
+            connection.messageReceived(msg);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+        // <TODO: Wolftein Use some common logger>
+        ctx.close();
+    }
+}
@@ -0,0 +1,253 @@
+/**
+ * This file is part of Argentum Online.
+ *
+ * Copyright (c) 2014 Argentum Online <https://github.com/orgs/Argentum-Online/members>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghrum.common.protocol;
+
+import io.netty.buffer.ByteBuf;
+
+import java.io.IOException;
+
+/**
+ * Define the {@link Protocol} driven by the swarm, with the messages of a minimal game session
+ * <ul>
+ * <li>{@link HandshakeMessage} and {@link IdentificationMessage}: the login of a bot</li>
+ * <li>{@link WalkMessage}, {@link ChatMessage} and {@link AttackMessage}: the actions of a bot in game</li>
+ * <li>{@link PingMessage}: the probe of the round-trip latency, echoed by the server</li>
+ * </ul>
+ */
+public final class SwarmProtocol implements Protocol {
+    /**
+     * The version of the protocol sent in the handshake
+     */
+    public static final int VERSION = 1;
+
+    private final MessageLookupService service = new MessageLookupService(256);
+
+    /**
+     * Default constructor for {@link SwarmProtocol}
+     */
+    public SwarmProtocol() {
+        service.register(new HandshakeCodec());
+        service.register(new IdentificationCodec());
+        service.register(new WalkCodec());
+        service.register(new ChatCodec());
+        service.register(new AttackCodec());
+        service.register(new PingCodec());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public MessageLookupService getMessageService() {
+        return service;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Message getKickMessage(String message) {
+        return new ChatMessage(-1, message);
+    }
+
+    /**
+     * Define the first message of a session, sent by the client and echoed by the server
+     */
+    public static final class HandshakeMessage implements Message {
+        public final int version;
+
+        public HandshakeMessage(int version) {
+            this.version = version;
+        }
+    }
+
+    /**
+     * Define the identification of a bot, answered by the server with the entity of the bot
+     */
+    public static final class IdentificationMessage implements Message {
+        public final int entity;
+        public final String name;
+
+        public IdentificationMessage(int entity, String name) {
+            this.entity = entity;
+            this.name = name;
+        }
+    }
+
+    /**
+     * Define a step of a bot towards a heading
+     */
+    public static final class WalkMessage implements Message {
+        public final byte heading;
+
+        public WalkMessage(byte heading) {
+            this.heading = heading;
+        }
+    }
+
+    /**
+     * Define a line of chat, broadcast by the server to the room of the sender
+     */
+    public static final class ChatMessage implements Message {
+        public final int entity;
+        public final String text;
+
+        public ChatMessage(int entity, String text) {
+            this.entity = entity;
+            this.text = text;
+        }
+    }
+
+    /**
+     * Define an attack of a bot against another entity
+     */
+    public static final class AttackMessage implements Message {
+        public final int target;
+
+        public AttackMessage(int target) {
+            this.target = target;
+        }
+    }
+
+    /**
+     * Define a probe of the round-trip latency
+     */
+    public static final class PingMessage implements Message {
+        public final long time;
+
+        public PingMessage(long time) {
+            this.time = time;
+        }
+    }
+
+    /**
+     * Define the codec for {@link HandshakeMessage}
+     */
+    public static final class HandshakeCodec extends MessageCodec<HandshakeMessage> {
+        public HandshakeCodec() {
+            super(HandshakeMessage.class, 0x01, Connection.State.EXCHANGE_HANDSHAKE);
+        }
+
+        @Override
+        public void encode(HandshakeMessage message, ByteBuf out) throws IOException {
+            out.writeInt(message.version);
+        }
+
+        @Override
+        public HandshakeMessage decode(ByteBuf buffer) throws IOException {
+            return new HandshakeMessage(buffer.readInt());
+        }
+    }
+
+    /**
+     * Define the codec for {@link IdentificationMessage}
+     */
+    public static final class IdentificationCodec extends MessageCodec<IdentificationMessage> {
+        public IdentificationCodec() {
+            super(IdentificationMessage.class, 0x02, Connection.State.EXCHANGE_IDENTIFICATION);
+        }
+
+        @Override
+        public void encode(IdentificationMessage message, ByteBuf out) throws IOException {
+            out.writeInt(message.entity);
+            CodecSupport.writeString(out, message.name);
+        }
+
+        @Override
+        public IdentificationMessage decode(ByteBuf buffer) throws IOException {
+            return new IdentificationMessage(buffer.readInt(), CodecSupport.readString(buffer));
+        }
+    }
+
+    /**
+     * Define the codec for {@link WalkMessage}
+     */
+    public static final class WalkCodec extends MessageCodec<WalkMessage> {
+        public WalkCodec() {
+            super(WalkMessage.class, 0x10, Connection.State.GAME);
+        }
+
+        @Override
+        public void encode(WalkMessage message, ByteBuf out) throws IOException {
+            out.writeByte(message.heading);
+        }
+
+        @Override
+        public WalkMessage decode(ByteBuf buffer) throws IOException {
+            return new WalkMessage(buffer.readByte());
+        }
+    }
+
+    /**
+     * Define the codec for {@link ChatMessage}
+     */
+    public static final class ChatCodec extends MessageCodec<ChatMessage> {
+        public ChatCodec() {
+            super(ChatMessage.class, 0x11, Connection.State.GAME);
+        }
+
+        @Override
+        public void encode(ChatMessage message, ByteBuf out) throws IOException {
+            out.writeInt(message.entity);
+            CodecSupport.writeString(out, message.text);
+        }
+
+        @Override
+        public ChatMessage decode(ByteBuf buffer) throws IOException {
+            return new ChatMessage(buffer.readInt(), CodecSupport.readString(buffer));
+        }
+    }
+
+    /**
+     * Define the codec for {@link AttackMessage}
+     */
+    public static final class AttackCodec extends MessageCodec<AttackMessage> {
+        public AttackCodec() {
+            super(AttackMessage.class, 0x12, Connection.State.GAME);
+        }
+
+        @Override
+        public void encode(AttackMessage message, ByteBuf out) throws IOException {
+            out.writeInt(message.target);
+        }
+
+        @Override
+        public AttackMessage decode(ByteBuf buffer) throws IOException {
+            return new AttackMessage(buffer.readInt());
+        }
+    }
+
+    /**
+     * Define the codec for {@link PingMessage}
+     */
+    public static final class PingCodec extends MessageCodec<PingMessage> {
+        public PingCodec() {
+            super(PingMessage.class, 0x13, Connection.State.GAME);
+        }
+
+        @Override
+        public void encode(PingMessage message, ByteBuf out) throws IOException {
+            out.writeLong(message.time);
+        }
+
+        @Override
+        public PingMessage decode(ByteBuf buffer) throws IOException {
+            return new PingMessage(buffer.readLong());
+        }
+    }
+}
@@ -0,0 +1,211 @@
+/**
+ * This file is part of Argentum Online.
+ *
+ * Copyright (c) 2014 Argentum Online <https://github.com/orgs/Argentum-Online/members>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghrum.common.protocol;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Define the loopback server the swarm is driven against
+ * <p>
+ * The server answers the login of every bot, echoes the pings and broadcasts every line of chat to the room of its
+ * sender, so the swarm exercises the same {@link CommonConnectionManager} that a game server runs on. A bot joins
+ * its room with its first message in game rather than with its identification, since the bot can't decode the
+ * broadcasts of its room until it has entered the game itself.
+ * <p>
+ * The server may also accept the {@link NodeLink} of a {@link SwarmGateway}, so the bots are driven through the
+ * gateway and every bot is a session of a link rather than a socket of its own
+ */
+public final class SwarmServer {
+    private final SwarmProtocol protocol = new SwarmProtocol();
+    private final CommonConnectionManager manager = new CommonConnectionManager(protocol);
+    private final ServerBootstrap bootstrap = new ServerBootstrap();
+    private final ServerBootstrap linkBootstrap = new ServerBootstrap();
+    private final AtomicInteger entities = new AtomicInteger();
+    private final int roomSize;
+    private final EventLoopGroup bossGroup;
+    private final EventLoopGroup workerGroup;
+
+    /**
+     * Default constructor for {@link SwarmServer}
+     *
+     * @param workers  the number of worker threads, or 0 for the default number
+     * @param roomSize the number of entities of every room
+     */
+    public SwarmServer(int workers, int roomSize) {
+        if (roomSize <= 0) {
+            throw new IllegalArgumentException("Room size " + roomSize + " is out of bounds");
+        }
+        this.roomSize = roomSize;
+        this.bossGroup = new NioEventLoopGroup(1);
+        this.workerGroup = new NioEventLoopGroup(workers);
+
+        final MessageLookupService service = protocol.getMessageService();
+        service.register(SwarmProtocol.HandshakeMessage.class, this::handshake);
+        service.register(SwarmProtocol.IdentificationMessage.class, this::identification);
+        service.register(SwarmProtocol.WalkMessage.class, (connection, message) -> enter(connection));
+        service.register(SwarmProtocol.AttackMessage.class, (connection, message) -> enter(connection));
+        service.register(SwarmProtocol.ChatMessage.class, this::chat);
+        service.register(SwarmProtocol.PingMessage.class, this::ping);
+        service.freeze();
+
+        final ProtocolChannelInitializer initializer = new ProtocolChannelInitializer(service,
+                new SwarmHandler(protocol, manager));
+        bootstrap.group(bossGroup, workerGroup)
+                .channel(NioServerSocketChannel.class)
+                .childHandler(initializer)
+                .option(ChannelOption.SO_BACKLOG, 4096)
+                .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                .childOption(ChannelOption.TCP_NODELAY, true);
+        linkBootstrap.group(bossGroup, workerGroup)
+                .channel(NioServerSocketChannel.class)
+                .childHandler(new NodeLinkInitializer(false, initializer))
+                .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                .childOption(ChannelOption.TCP_NODELAY, true);
+    }
+
+    /**
+     * Binds the server to an address and a port where the bots connect
+     *
+     * @param address the address to bind to
+     * @param port    the port to bind to
+     */
+    public void bind(String address, int port) {
+        bootstrap.bind(address, port).syncUninterruptibly();
+    }
+
+    /**
+     * Binds the server to an address and a port where the gateways link
+     *
+     * @param address the address to bind to
+     * @param port    the port to bind to
+     */
+    public void bindLinks(String address, int port) {
+        linkBootstrap.bind(address, port).syncUninterruptibly();
+    }
+
+    /**
+     * Starts pulsing the connections of the server
+     *
+     * @param rate the number of pulses per second
+     */
+    public void start(int rate) {
+        manager.start(rate, TickScheduler.Policy.CATCH_UP);
+    }
+
+    /**
+     * Stops the server and closes every connection
+     */
+    public void stop() {
+        manager.stop("Server closed");
+        bossGroup.shutdownGracefully();
+        workerGroup.shutdownGracefully();
+    }
+
+    /**
+     * Gets the manager of the connections of the server
+     *
+     * @return the manager of the connections of the server
+     */
+    public CommonConnectionManager getManager() {
+        return manager;
+    }
+
+    /**
+     * Handle the handshake of a bot
+     */
+    private void handshake(Connection connection, SwarmProtocol.HandshakeMessage message) {
+        if (message.version != SwarmProtocol.VERSION) {
+            connection.disconnect("Protocol version " + message.version + " isn't supported");
+            return;
+        }
+        connection.send(new SwarmProtocol.HandshakeMessage(SwarmProtocol.VERSION));
+        connection.setState(Connection.State.EXCHANGE_IDENTIFICATION);
+    }
+
+    /**
+     * Handle the identification of a bot
+     */
+    private void identification(Connection connection, SwarmProtocol.IdentificationMessage message) {
+        final Avatar avatar = new Avatar(entities.getAndIncrement());
+        connection.setAttachment(avatar);
+        connection.send(new SwarmProtocol.IdentificationMessage(avatar.entity, message.name));
+        connection.setState(Connection.State.GAME);
+    }
+
+    /**
+     * Handle a line of chat of a bot
+     */
+    private void chat(Connection connection, SwarmProtocol.ChatMessage message) {
+        final Avatar avatar = enter(connection);
+        try {
+            manager.broadcast(avatar.room, new SwarmProtocol.ChatMessage(avatar.entity, message.text));
+        } catch (IOException ex) {
+            // <TODO: Wolftein Use some common logger>
+        }
+    }
+
+    /**
+     * Handle a ping of a bot
+     */
+    private void ping(Connection connection, SwarmProtocol.PingMessage message) {
+        enter(connection);
+        connection.send(message);
+    }
+
+    /**
+     * Joins a bot to its room, unless it did already
+     *
+     * @param connection the connection of the bot
+     * @return the avatar of the bot
+     */
+    private Avatar enter(Connection connection) {
+        final Avatar avatar = (Avatar) connection.getAttachment();
+        if (!avatar.isJoined) {
+            avatar.isJoined = true;
+            manager.join(avatar.room, (CommonConnection) connection);
+        }
+        return avatar;
+    }
+
+    /**
+     * Define the state of a bot in the server
+     */
+    private final class Avatar {
+        private final int entity;
+        private final Integer room;
+        private boolean isJoined;
+
+        /**
+         * Default constructor for {@link Avatar}
+         *
+         * @param entity the entity of the bot
+         */
+        private Avatar(int entity) {
+            this.entity = entity;
+            this.room = entity / roomSize;
+        }
+    }
+}
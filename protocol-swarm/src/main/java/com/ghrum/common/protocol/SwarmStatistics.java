@@ -0,0 +1,261 @@
+/**
+ * This file is part of Argentum Online.
+ *
+ * Copyright (c) 2014 Argentum Online <https://github.com/orgs/Argentum-Online/members>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghrum.common.protocol;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Define the statistics of the swarm
+ * <p>
+ * Every counter is striped so it can be updated from every Netty thread without contention, and the latencies are
+ * recorded into log-linear histograms so their percentiles can be read without keeping every sample
+ */
+public final class SwarmStatistics {
+    private final LongAdder connectAttempts = new LongAdder();
+    private final LongAdder connectFailures = new LongAdder();
+    private final LongAdder connects = new LongAdder();
+    private final LongAdder logins = new LongAdder();
+    private final LongAdder disconnects = new LongAdder();
+    private final Histogram loginLatency = new Histogram();
+    private final Histogram roundTripLatency = new Histogram();
+
+    /**
+     * Records a connection attempt of a bot
+     */
+    public void recordConnectAttempt() {
+        connectAttempts.increment();
+    }
+
+    /**
+     * Records a connection attempt of a bot that failed
+     */
+    public void recordConnectFailure() {
+        connectFailures.increment();
+    }
+
+    /**
+     * Records a connection of a bot
+     */
+    public void recordConnect() {
+        connects.increment();
+    }
+
+    /**
+     * Records a bot that reached the {@link Connection.State#GAME} state
+     *
+     * @param latency the time since the connection attempt of the bot, in nanoseconds
+     */
+    public void recordLogin(long latency) {
+        logins.increment();
+        loginLatency.record(latency);
+    }
+
+    /**
+     * Records a connection of a bot that was closed
+     */
+    public void recordDisconnect() {
+        disconnects.increment();
+    }
+
+    /**
+     * Records the round-trip latency of a ping
+     *
+     * @param latency the round-trip latency in nanoseconds
+     */
+    public void recordRoundTrip(long latency) {
+        roundTripLatency.record(latency);
+    }
+
+    /**
+     * Gets the number of connection attempts
+     *
+     * @return the number of connection attempts
+     */
+    public long getConnectAttempts() {
+        return connectAttempts.sum();
+    }
+
+    /**
+     * Gets the number of connection attempts that failed
+     *
+     * @return the number of connection attempts that failed
+     */
+    public long getConnectFailures() {
+        return connectFailures.sum();
+    }
+
+    /**
+     * Gets the number of connections
+     *
+     * @return the number of connections
+     */
+    public long getConnects() {
+        return connects.sum();
+    }
+
+    /**
+     * Gets the number of bots that reached the {@link Connection.State#GAME} state
+     *
+     * @return the number of logins
+     */
+    public long getLogins() {
+        return logins.sum();
+    }
+
+    /**
+     * Gets the number of connections that were closed
+     *
+     * @return the number of connections that were closed
+     */
+    public long getDisconnects() {
+        return disconnects.sum();
+    }
+
+    /**
+     * Gets the histogram of the time from the connection attempt of a bot until it reached the game
+     *
+     * @return the histogram of the login latency
+     */
+    public Histogram getLoginLatency() {
+        return loginLatency;
+    }
+
+    /**
+     * Gets the histogram of the round-trip latency of the pings
+     *
+     * @return the histogram of the round-trip latency
+     */
+    public Histogram getRoundTripLatency() {
+        return roundTripLatency;
+    }
+
+    /**
+     * Define a concurrent log-linear histogram of latencies
+     * <p>
+     * Every power of two microseconds is split into {@link #SUB_BUCKETS} linear buckets, so the bound of every
+     * bucket is off by at most one eighth of the latency
+     */
+    public static final class Histogram {
+        /**
+         * The number of linear buckets of every power of two
+         */
+        public static final int SUB_BUCKETS = 8;
+        /**
+         * The number of buckets of the histogram, enough for latencies of two minutes
+         */
+        public static final int BUCKETS = 200;
+
+        private static final int SUB_BUCKET_BITS = Integer.numberOfTrailingZeros(SUB_BUCKETS);
+
+        private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+
+        /**
+         * Records a latency
+         *
+         * @param latency the latency in nanoseconds
+         */
+        public void record(long latency) {
+            histogram.incrementAndGet(bucketOf(latency));
+            max.accumulate(latency);
+        }
+
+        /**
+         * Gets a snapshot of the histogram
+         * <p>
+         * The bucket {@code i} counts every latency that was less than {@link #getBucketBound(int)} nanoseconds and
+         * at least the bound of the previous bucket
+         *
+         * @return the number of latencies for every bucket
+         */
+        public long[] getHistogram() {
+            final long[] buckets = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = histogram.get(i);
+            }
+            return buckets;
+        }
+
+        /**
+         * Gets the highest latency recorded since the last call, and resets it
+         *
+         * @return the highest latency in nanoseconds
+         */
+        public long getThenResetMax() {
+            return max.getThenReset();
+        }
+
+        /**
+         * Gets an upper bound of the latency of the given fraction of a snapshot
+         *
+         * @param histogram  the snapshot of the histogram
+         * @param percentile the fraction of latencies, between 0 and 1
+         * @return the upper bound of the latency in nanoseconds, or 0 if the snapshot is empty
+         */
+        public static long getPercentile(long[] histogram, double percentile) {
+            long total = 0;
+            for (long count : histogram) {
+                total += count;
+            }
+            final long target = (long) Math.ceil(total * percentile);
+            long accumulated = 0;
+            for (int i = 0; i < histogram.length; i++) {
+                accumulated += histogram[i];
+                if (accumulated >= target && accumulated > 0) {
+                    return getBucketBound(i);
+                }
+            }
+            return 0L;
+        }
+
+        /**
+         * Gets the upper bound of a bucket of the histogram
+         *
+         * @param bucket the index of the bucket
+         * @return the upper bound of the bucket in nanoseconds
+         */
+        public static long getBucketBound(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return TimeUnit.MICROSECONDS.toNanos(bucket + 1);
+            }
+            final int shift = bucket / SUB_BUCKETS - 1;
+            return TimeUnit.MICROSECONDS.toNanos((long) (SUB_BUCKETS + bucket % SUB_BUCKETS + 1) << shift);
+        }
+
+        /**
+         * Gets the bucket of the histogram for the given latency
+         *
+         * @param latency the latency in nanoseconds
+         * @return the index of the bucket
+         */
+        static int bucketOf(long latency) {
+            final long micros = Math.max(0L, TimeUnit.NANOSECONDS.toMicros(latency));
+            if (micros < SUB_BUCKETS) {
+                return (int) micros;
+            }
+            // The highest bit selects the power of two, and the bits below
+            // it select the linear bucket within that power of two
+            final int shift = 63 - Long.numberOfLeadingZeros(micros) - SUB_BUCKET_BITS;
+            final int bucket = (shift + 1) * SUB_BUCKETS + (int) ((micros >>> shift) & (SUB_BUCKETS - 1));
+            return Math.min(BUCKETS - 1, bucket);
+        }
+    }
+}